@@ -0,0 +1,155 @@
+package benchmarks;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import algorithms.BST;
+
+/**
+ * The workloads of main.Main under JMH. Keys are drawn uniformly from [1, keys] with
+ * main.Random, and mixed picks inserts, deletes and searches in the proportions
+ * given by ratio, written as Main prints its -ins/-del switches ("10i-10d" for
+ * -ins10 -del10). The tree starts out in the steady state of that mix, bulk loaded
+ * as by Main's -prefill-bulk, so the first measured operation sees the same tree
+ * as the millionth.
+ *
+ * insert and remove run as the group "updates", half of the threads inserting and
+ * half removing, and JMH reports the throughput of each (updates:insert,
+ * updates:remove). Run alone, insert-only threads would fill the tree within an
+ * iteration and from then on only measure failed inserts, and remove-only threads
+ * would empty it; together they hold it at a steady state. The group needs an even
+ * thread count, and JMH rounds an odd one up.
+ *
+ * Thread counts are not a JMH parameter; Runner runs the benchmarks once per count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(3)
+public class BSTBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int keys;
+
+    @Param({"0i-0d", "10i-10d", "50i-50d"})
+    public String ratio;
+
+    // BST.Option names, comma separated
+    @Param({""})
+    public String options;
+
+    BST tree;
+    int ins; // out of Integer.MAX_VALUE, like the thresholds in Main's TimedWorker
+    int insOrDel;
+
+    @State(Scope.Thread)
+    public static class Keys {
+        main.Random rng;
+
+        @Setup(Level.Trial)
+        public void seed(ThreadParams thread) {
+            rng = new main.Random(0x9E3779B9 * (thread.getThreadIndex() + 1));
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void prefill() {
+        String[] parts = ratio.split("-");
+        if (parts.length != 2 || !parts[0].endsWith("i") || !parts[1].endsWith("d")) {
+            throw new IllegalArgumentException("ratio must look like 10i-10d, was " + ratio);
+        }
+        double insRatio = Double.parseDouble(parts[0].substring(0, parts[0].length() - 1)) / 100;
+        double delRatio = Double.parseDouble(parts[1].substring(0, parts[1].length() - 1)) / 100;
+        ins = (int) (insRatio * Integer.MAX_VALUE);
+        insOrDel = (int) ((insRatio + delRatio) * Integer.MAX_VALUE);
+
+        ArrayList<BST.Option> opts = new ArrayList<>();
+        for (String name : options.split(",")) {
+            if (!name.isBlank()) {
+                opts.add(BST.Option.valueOf(name.trim()));
+            }
+        }
+        tree = new BST(opts.toArray(new BST.Option[0]));
+
+        // each key is present with probability ins/(ins+del), as in Main.bulkFill
+        double p = insRatio + delRatio == 0 ? 0.5 : insRatio / (insRatio + delRatio);
+        java.util.Random rand = new java.util.Random(keys);
+        int[] present = new int[keys];
+        int n = 0;
+        for (int key = 1; key <= keys; key++) {
+            if (rand.nextDouble() < p) {
+                present[n++] = key;
+            }
+        }
+        tree.bulkLoadParallel(java.util.Arrays.copyOf(present, n));
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        tree.stopRebalancing();
+    }
+
+    @Benchmark
+    public boolean contains(Keys k) {
+        return tree.contains(k.rng.nextNatural(keys) + 1);
+    }
+
+    @Benchmark
+    public boolean mixed(Keys k) {
+        return mix(k);
+    }
+
+    /*
+     * mixed with every stale search restarting from the root instead of resuming at
+     * its anchor (see BST.find and BST.RESUME); the difference to mixed is what the
+     * resume is worth for the workload.
+     */
+    @Benchmark
+    @Fork(value = 3, jvmArgsAppend = "-Dlazybst.noresume=true")
+    public boolean mixedFromRoot(Keys k) {
+        return mix(k);
+    }
+
+    private boolean mix(Keys k) {
+        int key = k.rng.nextNatural(keys) + 1;
+        int op = k.rng.nextNatural();
+        if (op < ins) {
+            return tree.insert(key);
+        } else if (op < insOrDel) {
+            return tree.remove(key);
+        }
+        return tree.contains(key);
+    }
+
+    @Benchmark
+    @Group("updates")
+    @GroupThreads(1)
+    public boolean insert(Keys k) {
+        return tree.insert(k.rng.nextNatural(keys) + 1);
+    }
+
+    @Benchmark
+    @Group("updates")
+    @GroupThreads(1)
+    public boolean remove(Keys k) {
+        return tree.remove(k.rng.nextNatural(keys) + 1);
+    }
+}
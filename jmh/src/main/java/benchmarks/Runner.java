@@ -0,0 +1,43 @@
+package benchmarks;
+
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks once for every thread count in -threads (default 1,2,4,8),
+ * passing every other argument on to JMH. A result file given with -rff gets the
+ * thread count appended to its name, so that the runs do not overwrite each other:
+ *
+ *   java -jar jmh/target/benchmarks.jar -threads 1,4 -p keys=100000 -rf json -rff bst.json
+ */
+public class Runner {
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        String threads = "1,2,4,8";
+        java.util.ArrayList<String> rest = new java.util.ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-threads") && i + 1 < args.length) {
+                threads = args[++i];
+            } else {
+                rest.add(args[i]);
+            }
+        }
+        CommandLineOptions cmd = new CommandLineOptions(rest.toArray(new String[0]));
+        for (String t : threads.split(",")) {
+            int n = Integer.parseInt(t.trim());
+            OptionsBuilder builder = new OptionsBuilder();
+            builder.parent(cmd).threads(n);
+            if (cmd.getResult().hasValue()) {
+                builder.result(withSuffix(cmd.getResult().get(), "-" + n + "t"));
+            }
+            new org.openjdk.jmh.runner.Runner(builder.build()).run();
+        }
+    }
+
+    // bst.json, -4t -> bst-4t.json
+    private static String withSuffix(String file, String suffix) {
+        int dot = file.lastIndexOf('.');
+        return dot < 0 ? file + suffix : file.substring(0, dot) + suffix + file.substring(dot);
+    }
+}
@@ -0,0 +1,625 @@
+package algorithms;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import main.BSTInterface;
+
+/**
+ * The BST algorithm with its nodes stored in slabs instead of objects. A node is three
+ * consecutive ints (key, left, right) in an int slab and a long meta word at the same
+ * index of a long slab, and children are slab indices, so a node takes 20 bytes
+ * instead of the 32 of a BST.Node, carries no object header or monitor, and the GC
+ * never has to trace the tree.
+ *
+ * The meta word packs the marked bit, a lock bit (there are no objects to synchronize
+ * on), the moved bit (see BST.Node.moved) and the generation stamp. The stamp has 61
+ * bits, so like BST's it does not wrap in any run; a 32-bit one would, after a few
+ * hundred million relocations, and stale searches would then go unnoticed. Removed
+ * nodes are recycled through per-thread free lists once epoch-based reclamation shows
+ * that no operation can still reach them (see enter). Operations count themselves in
+ * and out of their epoch in counters striped by thread rather than registering each
+ * thread, so threads that come and go, such as virtual threads, cost nothing to track.
+ */
+public class ArrayBST implements BSTInterface {
+    static final int NIL = 0;
+    static final int ROOT = 1;
+
+    // node layout
+    static final int KEY = 0;
+    static final int LEFT = 1;
+    static final int RIGHT = 2;
+    static final int NODE_INTS = 3;
+
+    // meta word: generation << GEN_SHIFT | MOVED | LOCKED | MARKED
+    static final long MARKED = 1;
+    static final long LOCKED = 2;
+    static final long MOVED = 4; // marked, but the key lives on in another node
+    static final int GEN_SHIFT = 3;
+
+    static final int CHUNK_SHIFT = 14; // 16384 nodes (192KB of ints, 128KB of meta words) per slab chunk
+    static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+    static final int MAX_CHUNKS = 1 << (30 - CHUNK_SHIFT);
+    static final int BUMP_BATCH = 64; // indices a thread takes from the bump pointer at once
+    static final int RETIRES_PER_ADVANCE = 128;
+    static final int ACTIVE_STRIDE = 16; // longs per stripe of active, 128 bytes, so stripes share no line
+
+    private static final VarHandle INTS = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle LONGS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    final int[][] chunks = new int[MAX_CHUNKS][];
+    final long[][] metas = new long[MAX_CHUNKS][];
+    final AtomicInteger bump = new AtomicInteger(ROOT + 1);
+    final AtomicLong generation = new AtomicLong(0);
+    final AtomicLong size = new AtomicLong(0);
+    final AtomicLong keysum = new AtomicLong(0);
+
+    // epoch-based reclamation: active counts the operations in progress by the epoch
+    // they entered in (its slot is epoch % 4), striped by thread like StripedCounters
+    final AtomicLong epoch = new AtomicLong(0);
+    final AtomicLongArray active = new AtomicLongArray(StripedCounters.STRIPES * ACTIVE_STRIDE);
+    private final ThreadLocal<ThreadState> local = ThreadLocal.withInitial(ThreadState::new);
+
+    static final class IntStack {
+        int[] items = new int[16];
+        int size;
+
+        void push(int x) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = x;
+        }
+
+        int pop() {
+            return items[--size];
+        }
+
+        void moveTo(IntStack other) {
+            while (size > 0) {
+                other.push(pop());
+            }
+        }
+    }
+
+    static final class ThreadState {
+        final int stripe = StripedCounters.stripe() * ACTIVE_STRIDE; // this thread's counts in active
+        long localEpoch; // the epoch the operation in progress, or the last one, entered in
+        final IntStack[] limbo = {new IntStack(), new IntStack(), new IntStack(), new IntStack()}; // indexed by retire epoch % 4
+        final IntStack free = new IntStack();
+        int bumpNext, bumpEnd;
+        int retires;
+        int pred; // parent of the node returned by the last find
+        long generation; // generation counter when the last find started
+    }
+
+    public ArrayBST() {
+        ensureChunk(0);
+        init(ROOT, Integer.MIN_VALUE);
+    }
+
+    // ---- slab access ----
+
+    int get(int node, int field) {
+        return (int) INTS.getVolatile(chunks[node >>> CHUNK_SHIFT], (node & CHUNK_MASK) * NODE_INTS + field);
+    }
+
+    void set(int node, int field, int value) {
+        INTS.setVolatile(chunks[node >>> CHUNK_SHIFT], (node & CHUNK_MASK) * NODE_INTS + field, value);
+    }
+
+    long meta(int node) {
+        return (long) LONGS.getVolatile(metas[node >>> CHUNK_SHIFT], node & CHUNK_MASK);
+    }
+
+    void setMeta(int node, long value) {
+        LONGS.setVolatile(metas[node >>> CHUNK_SHIFT], node & CHUNK_MASK, value);
+    }
+
+    boolean casMeta(int node, long expected, long value) {
+        return LONGS.compareAndSet(metas[node >>> CHUNK_SHIFT], node & CHUNK_MASK, expected, value);
+    }
+
+    boolean marked(int node) {
+        return (meta(node) & MARKED) != 0;
+    }
+
+    boolean moved(int node) {
+        return (meta(node) & MOVED) != 0;
+    }
+
+    long generation(int node) {
+        return meta(node) >>> GEN_SHIFT;
+    }
+
+    void mark(int node, long bits) {
+        long meta;
+        do {
+            meta = meta(node);
+        } while (!casMeta(node, meta, meta | bits));
+    }
+
+    // generations are stamped on nodes their writer has not locked, so preserve the lock bit
+    // never lowers a stamp; see BST.raiseGeneration
+    void raiseGeneration(int node, long gen) {
+        long meta;
+        do {
+            meta = meta(node);
+        } while (meta >>> GEN_SHIFT < gen && !casMeta(node, meta, (gen << GEN_SHIFT) | (meta & (MOVED | LOCKED | MARKED))));
+    }
+
+    void lock(int node) {
+        int spins = 0;
+        while (true) {
+            long meta = meta(node);
+            if ((meta & LOCKED) == 0 && casMeta(node, meta, meta | LOCKED)) {
+                return;
+            }
+            if (++spins < 64) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    void unlock(int node) {
+        long meta;
+        do {
+            meta = meta(node);
+        } while (!casMeta(node, meta, meta & ~LOCKED));
+    }
+
+    // ---- allocation and reclamation ----
+
+    private synchronized void ensureChunk(int chunk) {
+        if (chunk >= MAX_CHUNKS) {
+            throw new IllegalStateException("ArrayBST is full");
+        }
+        if (chunks[chunk] == null) {
+            metas[chunk] = new long[CHUNK_MASK + 1];
+            chunks[chunk] = new int[(CHUNK_MASK + 1) * NODE_INTS];
+        }
+    }
+
+    private void init(int node, int key) {
+        set(node, KEY, key);
+        set(node, LEFT, NIL);
+        set(node, RIGHT, NIL);
+        setMeta(node, 0);
+    }
+
+    private int allocate(ThreadState ts, int key) {
+        int node;
+        if (ts.free.size > 0) {
+            node = ts.free.pop();
+        } else {
+            if (ts.bumpNext == ts.bumpEnd) {
+                ts.bumpNext = bump.getAndAdd(BUMP_BATCH);
+                ts.bumpEnd = ts.bumpNext + BUMP_BATCH;
+                ensureChunk((ts.bumpEnd - 1) >>> CHUNK_SHIFT);
+            }
+            node = ts.bumpNext++;
+        }
+        init(node, key);
+        return node;
+    }
+
+    /**
+     * Counts the calling thread's operation into the current epoch. The epoch only
+     * advances from e once no operation counted into any other epoch is in progress,
+     * so while one that entered in e runs, the epoch stays at e or e + 1. A node
+     * retired by it (into e) can thus still be reached by operations that entered in
+     * e + 1, and is only recycled once the epoch reaches e + 3, when those have ended
+     * too.
+     */
+    private ThreadState enter() {
+        ThreadState ts = local.get();
+        // the count only protects what is reachable in the epoch counted into: if the
+        // epoch moved on before it was visible, count again, or this thread would retire
+        // into and free from an epoch the others have already left
+        long e = epoch.get();
+        active.getAndIncrement(ts.stripe + (int) (e & 3));
+        for (long current; (current = epoch.get()) != e; ) {
+            active.getAndDecrement(ts.stripe + (int) (e & 3));
+            e = current;
+            active.getAndIncrement(ts.stripe + (int) (e & 3));
+        }
+        if (e != ts.localEpoch) {
+            // whatever was retired three or more epochs ago can no longer be reached
+            for (long r = ts.localEpoch; r > ts.localEpoch - 4 && r >= 0; r--) {
+                if (r <= e - 3) {
+                    ts.limbo[(int) (r & 3)].moveTo(ts.free);
+                }
+            }
+            ts.localEpoch = e;
+        }
+        return ts;
+    }
+
+    private void exit(ThreadState ts) {
+        active.getAndDecrement(ts.stripe + (int) (ts.localEpoch & 3));
+    }
+
+    private void retire(ThreadState ts, int node) {
+        ts.limbo[(int) (ts.localEpoch & 3)].push(node);
+        if (++ts.retires % RETIRES_PER_ADVANCE == 0) {
+            long e = epoch.get();
+            // a fixed number of stripes to look at, however many threads there are
+            for (int stripe = 0; stripe < active.length(); stripe += ACTIVE_STRIDE) {
+                for (int slot = 0; slot < 4; slot++) {
+                    if (slot != (e & 3) && active.get(stripe + slot) != 0) {
+                        return;
+                    }
+                }
+            }
+            epoch.compareAndSet(e, e + 1);
+        }
+    }
+
+    // ---- the BST algorithm ----
+
+    /**
+     * Same descent as BST.find: returns the node holding key or NIL, leaves its parent in
+     * ts.pred, and resumes a search that ran past a newer generation stamp from the
+     * deepest node where it turned opposite to its current step. As there, it only
+     * resumes if that stamp's relocation is the only one since the search started,
+     * which it reads off the global counter, so under many relocations it mostly
+     * restarts from the root; stamps are not versioned per subtree.
+     */
+    private int find(int key, ThreadState ts) {
+        int curr = ROOT;
+        int pred = NIL;
+
+        retry:
+        while (true) {
+            long searchGeneration = this.generation.get();
+            int leftTurn = NIL, leftTurnPred = NIL;
+            int rightTurn = NIL, rightTurnPred = NIL;
+
+            while (curr != NIL) {
+                int currKey = get(curr, KEY);
+                if (currKey == key) {
+                    break;
+                } else if (currKey < key) {
+                    rightTurn = curr;
+                    rightTurnPred = pred;
+                    pred = curr;
+                    curr = get(curr, RIGHT);
+                } else {
+                    leftTurn = curr;
+                    leftTurnPred = pred;
+                    pred = curr;
+                    curr = get(curr, LEFT);
+                }
+
+                if (generation(pred) > searchGeneration) {
+                    boolean wentRight = rightTurn == pred;
+                    int anchor = wentRight ? leftTurn : rightTurn;
+                    if (!BST.RESUME || anchor == NIL || marked(anchor) || this.generation.get() != searchGeneration + 1) {
+                        pred = NIL;
+                        curr = ROOT;
+                    } else {
+                        pred = wentRight ? leftTurnPred : rightTurnPred;
+                        curr = anchor;
+                    }
+                    continue retry;
+                }
+            }
+
+            ts.pred = pred;
+            ts.generation = searchGeneration;
+            return curr;
+        }
+    }
+
+    // like BST.contains, searches again when it ends on a node whose key was relocated
+    // up the tree, as it may have gone past the new home of the key before it got there
+    public boolean contains(final int key) {
+        ThreadState ts = enter();
+        try {
+            while (true) {
+                int curr = find(key, ts);
+                if (curr == NIL || get(curr, KEY) != key) {
+                    return false;
+                }
+                long meta = meta(curr);
+                if ((meta & MARKED) == 0) {
+                    return true;
+                }
+                if ((meta & MOVED) == 0) {
+                    return false;
+                }
+                Thread.onSpinWait();
+            }
+        } finally {
+            exit(ts);
+        }
+    }
+
+    // the ordered queries, as in BST; they take no locks and allocate nothing
+
+    public int ceiling(final int key, final int defaultValue) {
+        long result = nearest(key, true, true);
+        return result == BST.NONE ? defaultValue : (int) result;
+    }
+
+    public int higher(final int key, final int defaultValue) {
+        long result = nearest(key, true, false);
+        return result == BST.NONE ? defaultValue : (int) result;
+    }
+
+    public int floor(final int key, final int defaultValue) {
+        long result = nearest(key, false, true);
+        return result == BST.NONE ? defaultValue : (int) result;
+    }
+
+    public int lower(final int key, final int defaultValue) {
+        long result = nearest(key, false, false);
+        return result == BST.NONE ? defaultValue : (int) result;
+    }
+
+    public int first(final int defaultValue) {
+        return higher(Integer.MIN_VALUE, defaultValue);
+    }
+
+    public int last(final int defaultValue) {
+        return floor(Integer.MAX_VALUE, defaultValue);
+    }
+
+    /**
+     * Same search as BST.nearest. The epoch keeps the answer's node from being recycled
+     * before its mark and key are checked again.
+     */
+    long nearest(final int key, final boolean above, final boolean inclusive) {
+        ThreadState ts = enter();
+        try {
+            retry:
+            while (true) {
+                long searchGeneration = this.generation.get();
+                int best = NIL;
+                int bestKey = 0;
+                int curr = get(ROOT, RIGHT);
+                while (curr != NIL) {
+                    int currKey = get(curr, KEY); // read once: a relocation may change it between two reads
+                    if (generation(curr) > searchGeneration) {
+                        continue retry;
+                    }
+                    if (currKey == key && inclusive) {
+                        best = curr;
+                        bestKey = currKey;
+                        break;
+                    }
+                    if (above ? currKey > key : currKey >= key) {
+                        if (above) {
+                            best = curr;
+                            bestKey = currKey;
+                        }
+                        curr = get(curr, LEFT);
+                    } else {
+                        if (!above) {
+                            best = curr;
+                            bestKey = currKey;
+                        }
+                        curr = get(curr, RIGHT);
+                    }
+                }
+                if (best == NIL) {
+                    return BST.NONE;
+                }
+                if (marked(best) || get(best, KEY) != bestKey) {
+                    continue;
+                }
+                return bestKey;
+            }
+        } finally {
+            exit(ts);
+        }
+    }
+
+    boolean validateLeaf(int curr, int key) {
+        int currKey = get(curr, KEY);
+        return !marked(curr) && (currKey > key && get(curr, LEFT) == NIL || currKey < key && get(curr, RIGHT) == NIL);
+    }
+
+    boolean validate(int pred, int curr, boolean allowPredMarked) {
+        return (allowPredMarked || !marked(pred)) && !marked(curr) && (get(pred, RIGHT) == curr || get(pred, LEFT) == curr);
+    }
+
+    public boolean insert(final int key) {
+        ThreadState ts = enter();
+        try {
+            while (true) {
+                if (find(key, ts) != NIL) {
+                    return false;
+                }
+
+                int pred = ts.pred;
+                lock(pred);
+                try {
+                    // a relocation that emptied pred's slot since the search stamped pred first
+                    if (validateLeaf(pred, key) && generation(pred) <= ts.generation) {
+                        int node = allocate(ts, key);
+                        set(pred, key < get(pred, KEY) ? LEFT : RIGHT, node);
+                        size.incrementAndGet();
+                        keysum.addAndGet(key);
+                        return true;
+                    }
+                } finally {
+                    unlock(pred);
+                }
+            }
+        } finally {
+            exit(ts);
+        }
+    }
+
+    /**
+     * Unlinks curr, a child of pred on the given side, with pred and curr locked. Returns
+     * the node that left the tree (curr, or the node whose key was relocated into curr),
+     * or NIL if validation failed and the caller has to retry.
+     */
+    private int unlink(int pred, int curr, int side) {
+        int currLeft = get(curr, LEFT);
+        int currRight = get(curr, RIGHT);
+        if (currLeft == NIL || currRight == NIL) {
+            mark(curr, MARKED);
+            raiseGeneration(pred, generation(curr));
+            set(pred, side, currLeft == NIL ? currRight : currLeft);
+            return curr;
+        }
+
+        // relocate the successor (side RIGHT) or predecessor (side LEFT) into curr
+        int inner = side == RIGHT ? LEFT : RIGHT;
+        int outer = side;
+        int replacement = side == RIGHT ? currRight : currLeft;
+        int replacementPred = curr;
+        int next = get(replacement, inner);
+        while (next != NIL) {
+            replacementPred = replacement;
+            replacement = next;
+            next = get(replacement, inner);
+        }
+
+        // curr is already locked by the caller; lock words are not reentrant like monitors
+        boolean lockPred = replacementPred != curr;
+        if (lockPred) {
+            lock(replacementPred);
+        }
+        try {
+            lock(replacement);
+            try {
+                if (!validate(replacementPred, replacement, curr == replacementPred) || get(replacement, inner) != NIL) {
+                    return NIL; // validation failed, retry
+                }
+
+                set(curr, KEY, get(replacement, KEY));
+
+                int replacementChild = get(replacement, outer);
+                long changeGeneration = this.generation.incrementAndGet();
+                if (replacementChild != NIL) {
+                    raiseGeneration(replacementChild, changeGeneration);
+                } else {
+                    raiseGeneration(replacementPred, changeGeneration);
+                }
+
+                mark(replacement, MARKED | MOVED);
+                set(replacementPred, curr != replacementPred ? inner : outer, replacementChild);
+                return replacement;
+            } finally {
+                unlock(replacement);
+            }
+        } finally {
+            if (lockPred) {
+                unlock(replacementPred);
+            }
+        }
+    }
+
+    public boolean remove(final int key) {
+        ThreadState ts = enter();
+        try {
+            while (true) {
+                int curr = find(key, ts);
+                if (curr == NIL) {
+                    return false;
+                }
+                if (marked(curr)) {
+                    if (moved(curr)) {
+                        continue;
+                    }
+                    return false;
+                }
+
+                int pred = ts.pred;
+                int removed = NIL;
+                lock(pred);
+                try {
+                    lock(curr);
+                    try {
+                        if (!validate(pred, curr, false) || get(curr, KEY) != key) {
+                            continue;
+                        }
+                        int side = get(pred, LEFT) == curr ? LEFT : RIGHT;
+                        while ((removed = unlink(pred, curr, side)) == NIL) {}
+                    } finally {
+                        unlock(curr);
+                    }
+                } finally {
+                    unlock(pred);
+                }
+
+                retire(ts, removed);
+                size.decrementAndGet();
+                keysum.addAndGet(-key);
+                return true;
+            }
+        } finally {
+            exit(ts);
+        }
+    }
+
+    public int size() {
+        return this.size.intValue();
+    }
+
+    public String getName() {
+        return "ArrayBST";
+    }
+
+    public long getKeysum() {
+        return this.keysum.get();
+    }
+
+    /**
+     * Average number of nodes a search visits to reach a key that is in the tree. Not
+     * linearizable; meant for statistics once the updates have stopped.
+     */
+    public double averageDepth() {
+        long nodes = 0, depthSum = 0;
+        int[] stack = new int[64], depths = new int[64];
+        int top = 0;
+        if (get(ROOT, RIGHT) != NIL) {
+            stack[top] = get(ROOT, RIGHT);
+            depths[top++] = 1;
+        }
+        while (top > 0) {
+            int node = stack[--top], depth = depths[top];
+            if (!marked(node)) {
+                nodes++;
+                depthSum += depth;
+            }
+            if (top + 2 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            for (int field = LEFT; field <= RIGHT; field++) {
+                int child = get(node, field);
+                if (child != NIL) {
+                    stack[top] = child;
+                    depths[top++] = depth + 1;
+                }
+            }
+        }
+        return nodes == 0 ? 0 : depthSum / (double) nodes;
+    }
+
+    public boolean checkBSTProperty() {
+        return checkBSTProperty(get(ROOT, RIGHT), Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    private boolean checkBSTProperty(int node, int lo, int hi) {
+        if (node == NIL) {
+            return true;
+        }
+        int key = get(node, KEY);
+        if (marked(node) || key <= lo || key > hi) {
+            return false;
+        }
+        return checkBSTProperty(get(node, LEFT), lo, key - 1) && checkBSTProperty(get(node, RIGHT), key, hi);
+    }
+}
@@ -0,0 +1,219 @@
+package algorithms;
+
+import main.BSTInterface;
+
+public class ArrayBSTTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting ArrayBST Tests...");
+        
+        testBasicOperations();
+        testRemovals();
+        testNodeReuse();
+        testRelocatedKeysStayVisible();
+        testGenerationsBeyond32Bits();
+        testOrderedQueries();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testBasicOperations() {
+        System.out.println("Testing basic operations...");
+        BSTInterface bst = new ArrayBST();
+        
+        assert bst.size() == 0 : "Empty tree should have size 0";
+        assert !bst.contains(5) : "Empty tree should not contain any key";
+        assert !bst.remove(5) : "Removing from empty tree should return false";
+        
+        int[] values = {5, 3, 7, 1, 9, 4, 6, Integer.MIN_VALUE + 1, Integer.MAX_VALUE};
+        long expectedSum = 0;
+        for (int val : values) {
+            assert bst.insert(val) : "Should successfully insert " + val;
+            assert !bst.insert(val) : "Should not insert duplicate " + val;
+            expectedSum += val;
+        }
+        assert bst.size() == values.length : "Size should match insertions";
+        assert bst.getKeysum() == expectedSum : "Keysum should match expected";
+        for (int val : values) {
+            assert bst.contains(val) : "Should contain " + val;
+        }
+        assert !bst.contains(2) : "Should not contain 2";
+        assert !bst.contains(8) : "Should not contain 8";
+        
+        System.out.println("Basic operations tests passed");
+    }
+    
+    private static void testRemovals() {
+        System.out.println("Testing removal operations...");
+        ArrayBST bst = new ArrayBST();
+        
+        int[] insertOrder = {10, 5, 15, 3, 7, 12, 18, 1, 4, 6, 8, 11, 13, 16, 19};
+        for (int val : insertOrder) {
+            bst.insert(val);
+        }
+        
+        // leaf, one child and two children (relocating the successor or predecessor)
+        assert bst.remove(1) : "Should remove leaf 1";
+        assert bst.remove(3) : "Should remove node 3 with one child";
+        assert bst.remove(10) : "Should remove root 10";
+        assert bst.remove(5) : "Should remove node 5";
+        assert bst.remove(15) : "Should remove node 15";
+        assert !bst.remove(10) : "Should not remove 10 twice";
+        assert bst.size() == 10 : "Size should be 10";
+        assert bst.checkBSTProperty() : "BST property should hold";
+        
+        int[] remaining = {4, 6, 7, 8, 11, 12, 13, 16, 18, 19};
+        for (int val : remaining) {
+            assert bst.contains(val) : "Should still contain " + val;
+        }
+        
+        System.out.println("Removal tests passed");
+    }
+    
+    private static void testNodeReuse() {
+        System.out.println("Testing node reuse...");
+        ArrayBST bst = new ArrayBST();
+        
+        // removed nodes must come back through the free list instead of growing the slab
+        java.util.Random rng = new java.util.Random(3);
+        for (int i = 0; i < 200000; i++) {
+            int key = rng.nextInt(1000);
+            if (!bst.insert(key)) {
+                bst.remove(key);
+            }
+        }
+        assert bst.bump.get() < 10000 : "Slab should stay small, but " + bst.bump.get() + " nodes were allocated";
+        assert bst.checkBSTProperty() : "BST property should hold";
+        
+        int present = 0;
+        long keysum = 0;
+        for (int key = 0; key < 1000; key++) {
+            if (bst.contains(key)) {
+                present++;
+                keysum += key;
+            }
+        }
+        assert bst.size() == present : "Size should match the keys found";
+        assert bst.getKeysum() == keysum : "Keysum should match the keys found";
+        
+        System.out.println("Node reuse tests passed");
+    }
+    
+    private static void testRelocatedKeysStayVisible() {
+        System.out.println("Testing searches that end on a relocated node...");
+        
+        // removing 10 moves its successor 12 up into its node
+        ArrayBST bst = new ArrayBST();
+        for (int val : new int[] {10, 5, 15, 12}) {
+            bst.insert(val);
+        }
+        int node10 = bst.get(ArrayBST.ROOT, ArrayBST.RIGHT);
+        int node12 = bst.get(bst.get(node10, ArrayBST.RIGHT), ArrayBST.LEFT);
+        int node5 = bst.get(node10, ArrayBST.LEFT);
+        assert bst.remove(10) : "Should remove 10";
+        assert bst.get(node10, ArrayBST.KEY) == 12 : "12 should have moved up into the node of 10";
+        assert bst.marked(node12) && bst.moved(node12) : "The node 12 left should be marked as moved";
+        assert bst.remove(5) : "Should remove 5";
+        assert bst.marked(node5) && !bst.moved(node5) : "A leaf that is removed should not be marked as moved";
+        
+        // readers of keys that stay in the tree, while removing the odd keys relocates them
+        final ArrayBST tree = new ArrayBST();
+        for (int key = 1; key < 64; key++) {
+            tree.insert(key);
+        }
+        final java.util.concurrent.atomic.AtomicBoolean done = new java.util.concurrent.atomic.AtomicBoolean();
+        final java.util.concurrent.atomic.AtomicInteger misses = new java.util.concurrent.atomic.AtomicInteger();
+        Thread churn = new Thread(() -> {
+            java.util.Random rng = new java.util.Random(5);
+            for (int i = 0; i < 300000; i++) {
+                int key = 1 + 2 * rng.nextInt(32);
+                if (!tree.remove(key)) {
+                    tree.insert(key);
+                }
+            }
+            done.set(true);
+        });
+        Thread[] readers = new Thread[2];
+        for (int t = 0; t < readers.length; t++) {
+            readers[t] = new Thread(() -> {
+                while (!done.get()) {
+                    for (int key = 2; key < 64; key += 2) {
+                        if (!tree.contains(key)) {
+                            misses.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        churn.start();
+        for (Thread r : readers) {
+            r.start();
+        }
+        try {
+            churn.join();
+            for (Thread r : readers) {
+                r.join();
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        assert misses.get() == 0 : "Keys that were never removed were reported missing " + misses.get() + " times";
+        for (int key = 2; key < 64; key += 2) {
+            assert tree.remove(key) : "Should remove " + key;
+        }
+        assert tree.checkBSTProperty() : "BST property should hold";
+        
+        System.out.println("Relocated key tests passed");
+    }
+    
+    private static void testGenerationsBeyond32Bits() {
+        System.out.println("Testing generation stamps past 32 bits...");
+        
+        ArrayBST bst = new ArrayBST();
+        for (int val : new int[] {10, 5, 15, 12, 20}) {
+            bst.insert(val);
+        }
+        long start = (1L << 32) - 1;
+        bst.generation.set(start);
+        int node10 = bst.get(ArrayBST.ROOT, ArrayBST.RIGHT);
+        int node15 = bst.get(node10, ArrayBST.RIGHT);
+        assert bst.remove(10) : "Should remove 10, relocating 12";
+        assert bst.generation.get() == start + 1 : "The relocation should count past 32 bits";
+        assert bst.generation(node15) == start + 1 : "The stamp should not wrap, was " + bst.generation(node15);
+        assert !bst.marked(node15) : "Stamping should keep the other meta bits";
+        
+        // the lock bit shares the word with the stamp
+        bst.lock(node15);
+        assert bst.generation(node15) == start + 1 : "Locking should keep the stamp";
+        bst.unlock(node15);
+        for (int val : new int[] {5, 12, 15, 20}) {
+            assert bst.contains(val) : "Should still contain " + val;
+        }
+        assert !bst.contains(10) : "Should not contain 10";
+        assert bst.checkBSTProperty() : "BST property should hold";
+        
+        System.out.println("Generation stamp tests passed");
+    }
+    
+    private static void testOrderedQueries() {
+        System.out.println("Testing ordered queries...");
+        
+        ArrayBST bst = new ArrayBST();
+        assert bst.first(-1) == -1 && bst.last(-1) == -1 : "Empty tree should have no first or last key";
+        for (int key : new int[] {30, 20, 40, 10, 50}) {
+            bst.insert(key);
+        }
+        assert bst.ceiling(20, -1) == 20 && bst.ceiling(21, -1) == 30 && bst.higher(20, -1) == 30 : "ceiling/higher";
+        assert bst.floor(25, -1) == 20 && bst.floor(20, -1) == 20 && bst.lower(20, -1) == 10 : "floor/lower";
+        assert bst.higher(50, -1) == -1 && bst.lower(10, -1) == -1 : "No key past the ends";
+        assert bst.first(-1) == 10 && bst.last(-1) == 50 : "first/last";
+        
+        // 30 has two children, so removing it relocates 40 into its node
+        assert bst.remove(30) : "Should remove 30";
+        assert bst.ceiling(30, -1) == 40 && bst.floor(35, -1) == 20 : "Queries should skip a removed key";
+        assert bst.remove(10) && bst.remove(50) : "Should remove the ends";
+        assert bst.first(-1) == 20 && bst.last(-1) == 40 : "first/last after removals";
+        
+        System.out.println("Ordered query tests passed");
+    }
+}
@@ -1,29 +1,105 @@
 package algorithms;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntConsumer;
 
 import main.BSTInterface;
 
 public class BST implements BSTInterface {
+    /**
+     * Optional behaviours, chosen when the tree is constructed.
+     */
+    public enum Option {
+        /**
+         * Inserts publish the new leaf with a compare-and-set on the parent's
+         * child slot instead of locking the parent. Removers close the empty
+         * child slots of a node (by pointing them back at the node) before
+         * unlinking it, so a successful CAS can never hang a leaf off a node
+         * that is being removed. A slot that is emptied again later is closed
+         * rather than set back to null, and inserts into it take the lock (see
+         * insertInternal).
+         */
+        CAS_INSERT,
+        /**
+         * size and keysum are kept in cells striped by thread (see StripedCounters)
+         * instead of two shared AtomicLongs, so successful updates only write a line
+         * shared with the few threads that hash to the same cell.
+         */
+        STRIPED_COUNTERS,
+        /**
+         * Like STRIPED_COUNTERS, but size() and getKeysum() return a linearizable
+         * snapshot of the cells rather than a running sum.
+         */
+        SNAPSHOT_COUNTERS,
+        /**
+         * A background thread keeps the tree roughly AVL-balanced (see Rebalancer), so
+         * sorted or mostly sorted insert orders do not degrade it into a list.
+         */
+        RELAXED_BALANCE,
+        /**
+         * The same background thread also keeps a count of the keys below every node,
+         * for rank and select. Updates never touch the counts, so they cost nothing on
+         * the update path; in exchange they lag behind by whatever changed since the
+         * thread last passed over a subtree. Without RELAXED_BALANCE the thread only
+         * counts and never rotates.
+         */
+        ORDER_STATISTICS,
+        /**
+         * Nodes are locked through a lock word embedded in each node (see lock) instead
+         * of their monitors. Removes and rotations only ever try the lock and fall back
+         * into their retry loops when it is held, so they never block behind another
+         * thread or inflate a monitor; inserts and bulkLoad, which hold one lock at a
+         * time, spin on it and then park.
+         */
+        NODE_LOCKS,
+        /**
+         * Operations that lose a race back off before retrying, with the randomized
+         * exponential backoff of ContentionManager.exponential(), unless the tree was
+         * given a ContentionManager of its own. Without it they retry at once.
+         */
+        BACKOFF
+    }
+
     class Node {
         volatile int key;
         volatile Node right;
         volatile Node left;
         volatile boolean marked;
         volatile int generation;
+        volatile boolean moved; // marked, but the key lives on in another node
+        volatile int lock; // odd while held, bumped on every acquire and release (NODE_LOCKS)
+        short height; // only read and written by the rebalancer
+        int count; // keys in the subtree as of the rebalancer's last pass over it (ORDER_STATISTICS)
         public Node(int key) { // Node constructor
             this.key = key;
             this.left = null;
             this.right = null;
             this.marked = false;
             this.generation = 0;
+            this.height = 1;
+            this.count = 1;
         }
     }
 
+    // per-thread scratch space for updates, reused across operations
     class FindResult{
         Node pred;
         Node curr;
+        StripedCounters.Cell cell; // the counter cell this thread hashes to, looked up on first use
+        Path path; // for batches, allocated on first use
+        long value; // value for the node an insert creates (see BSTMap)
+        int generation; // generation counter when the search that filled pred and curr started
 
         public FindResult(Node pred, Node curr) {
             this.pred = pred;
@@ -31,58 +107,615 @@ public class BST implements BSTInterface {
         }
     }
 
+    /**
+     * The nodes a search went through, root first, each with the bound its subtree's
+     * keys lie below. Reused across the keys of a batch (see find), and as the stack
+     * of the walk that picks the node for a relaxed poll (see nthNode), where uppers is
+     * 1 once the walk has passed the node's own key.
+     */
+    static final class Path {
+        Node[] nodes = new Node[64];
+        long[] uppers = new long[64];
+        int size;
+        int generation; // generation counter when the search that filled the path started
+
+        void push(Node n, long upper) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                uppers = Arrays.copyOf(uppers, size * 2);
+            }
+            nodes[size] = n;
+            uppers[size++] = upper;
+        }
+
+        Node pop() {
+            Node n = nodes[--size];
+            nodes[size] = null;
+            return n;
+        }
+
+        void clear() {
+            Arrays.fill(nodes, 0, size, null);
+            size = 0;
+        }
+
+        // index of the deepest unmarked node whose subtree may hold key, which must be
+        // no smaller than the key the path was filled for, and whose parent on the path
+        // is unmarked and still links to it; 0 (the root) if there is none or if the
+        // path is out of date. A search resumed below a parent that was unlinked since
+        // would hand the same failing pred to every retry of the operation.
+        int seek(int key, int currentGeneration) {
+            if (currentGeneration != generation) {
+                return 0;
+            }
+            int i = size - 1;
+            while (i > 0 && (uppers[i] <= key || nodes[i].marked || !linked(nodes[i-1], nodes[i]))) {
+                i--;
+            }
+            return Math.max(i, 0);
+        }
+
+        private static boolean linked(Node pred, Node n) {
+            return !pred.marked && (pred.left == n || pred.right == n);
+        }
+    }
+
+    /**
+     * Whether BST counts what it does under contention into metrics, from the
+     * lazybst.metrics system property. Being static final, it is a constant to the JIT,
+     * and with it off every "if (METRICS)" block is compiled away.
+     */
+    public static final boolean METRICS = Boolean.getBoolean("lazybst.metrics");
+
+    /**
+     * Whether a search that met a newer stamp resumes at its anchor (see find), or
+     * always restarts from the root, as it does with -Dlazybst.noresume=true. Only
+     * there to measure what the resume is worth (BSTBenchmark.mixedFromRoot); the
+     * same for ArrayBST.
+     */
+    static final boolean RESUME = !Boolean.getBoolean("lazybst.noresume");
+    static final BSTMetrics metrics = METRICS ? BSTMetrics.registered() : null;
+
+    private static final VarHandle LEFT;
+    private static final VarHandle RIGHT;
+    private static final VarHandle GENERATION;
+    private static final VarHandle LOCK;
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            LEFT = l.findVarHandle(Node.class, "left", Node.class);
+            RIGHT = l.findVarHandle(Node.class, "right", Node.class);
+            GENERATION = l.findVarHandle(Node.class, "generation", int.class);
+            LOCK = l.findVarHandle(Node.class, "lock", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     final Node root = new Node(Integer.MIN_VALUE);
     volatile AtomicInteger generation = new AtomicInteger(0);
     volatile AtomicLong size = new AtomicLong(0);
     volatile AtomicLong keysum = new AtomicLong(0);
+    final EnumSet<Option> options;
+    final boolean casInsert;
+    final boolean snapshotCounters;
+    final boolean nodeLocks;
+    final ContentionManager contention;
+    final StripedCounters counters; // null unless STRIPED_COUNTERS or SNAPSHOT_COUNTERS
+    final boolean balance;
+    private final Rebalancer rebalancer; // null unless RELAXED_BALANCE or ORDER_STATISTICS
+    private final Object passLock = new Object();
+    final ThreadLocal<FindResult> scratch = ThreadLocal.withInitial(() -> new FindResult(null, null));
+
+    public BST(Option... options) {
+        this(null, options);
+    }
+
+    /**
+     * A tree that retries as contention says, or as Option.BACKOFF says if it is null.
+     */
+    public BST(ContentionManager contention, Option... options) {
+        this.options = EnumSet.noneOf(Option.class);
+        for (Option o : options) {
+            this.options.add(o);
+        }
+        if (contention == null) {
+            contention = this.options.contains(Option.BACKOFF) ? ContentionManager.exponential() : ContentionManager.immediate();
+        }
+        this.contention = contention;
+        this.casInsert = this.options.contains(Option.CAS_INSERT);
+        this.snapshotCounters = this.options.contains(Option.SNAPSHOT_COUNTERS);
+        this.nodeLocks = this.options.contains(Option.NODE_LOCKS);
+        this.counters = snapshotCounters || this.options.contains(Option.STRIPED_COUNTERS) ? new StripedCounters() : null;
+        this.balance = this.options.contains(Option.RELAXED_BALANCE);
+        this.rebalancer = balance || this.options.contains(Option.ORDER_STATISTICS) ? new Rebalancer(this) : null;
+        if (rebalancer != null) {
+            rebalancer.start();
+        }
+    }
+
+    // Subclasses that keep more per key than the key itself (see BSTMap) override
+    // these three to carry it along whenever a key is stored in a node.
+
+    // a node for key, made by an insert (res holds its scratch space) or by bulkLoad (res is null)
+    Node newNode(int key, FindResult res) {
+        return new Node(key);
+    }
+
+    // a copy of n for a rotation, under n's lock
+    Node copyNode(Node n) {
+        return new Node(n.key);
+    }
+
+    // relocates from's key up into to, under the locks of both
+    void moveKey(Node to, Node from) {
+        to.key = from.key;
+    }
+
+    // a child slot pointing back at its own node was closed by a remover (CAS_INSERT mode)
+    static Node left(Node n) {
+        Node l = n.left;
+        return l == n ? null : l;
+    }
+
+    static Node right(Node n) {
+        Node r = n.right;
+        return r == n ? null : r;
+    }
+
+    // what to store in a child slot of n that is being emptied, under n's lock
+    private Node vacate(Node n, Node child) {
+        return child == null && casInsert ? n : child;
+    }
+
+    /**
+     * Stamps n with gen unless it already carries a newer stamp. A relocation stamps
+     * a node it has not locked, so a plain max-then-write by a remover holding that
+     * node could otherwise put an older stamp back over it.
+     */
+    private static void raiseGeneration(Node n, int gen) {
+        int current;
+        do {
+            current = n.generation;
+        } while (current < gen && !GENERATION.compareAndSet(n, current, gen));
+    }
+
+    /*
+     * The NODE_LOCKS lock word. Unlike a monitor it is not reentrant, so a thread
+     * never locks a node it already holds.
+     */
+
+    static boolean tryLock(Node n) {
+        int word = n.lock;
+        return (word & 1) == 0 && LOCK.compareAndSet(n, word, word + 1);
+    }
+
+    // spins for a while, then parks for growing intervals; there is no queue to be woken from
+    static void lock(Node n) {
+        for (int attempt = 0; !tryLock(n); attempt++) {
+            if (attempt < 64) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(1L << Math.min(attempt - 54, 20));
+            }
+        }
+    }
+
+    static void unlock(Node n) {
+        n.lock = n.lock + 1;
+    }
+
+    private static void closeEmptySlots(Node n) {
+        LEFT.compareAndSet(n, null, n);
+        RIGHT.compareAndSet(n, null, n);
+    }
 
-    private FindResult findInternal(int key, int searchGeneration) {
+    /**
+     * Checks that the relocated node has no child on the given side. In CAS_INSERT
+     * mode both of its empty slots are closed first, so that no insert can attach
+     * below it once it has been chosen; a failed close means an insert got there first.
+     */
+    private boolean closeLeaf(Node n, VarHandle slot) {
+        if (!casInsert) {
+            return (slot == LEFT ? n.left : n.right) == null;
+        }
+        Node witness = (Node) slot.compareAndExchange(n, null, n);
+        boolean closed = witness == null || witness == n;
+        if (closed) {
+            closeEmptySlots(n);
+        }
+        return closed;
+    }
+
+    /**
+     * Returns the node holding key, or null if the search fell off the tree. If res is
+     * not null, it also receives the returned node and its parent. Nothing is allocated,
+     * so contains can pass null and stay allocation-free.
+     *
+     * A search that runs past a node stamped with a generation newer than the one it
+     * started with has to retry. A stamp is left by removeLeft/removeRight when they
+     * relocate a key up into the node at which the path to that key last turned the
+     * other way. So instead of restarting from the root, the search resumes at the
+     * deepest node where it turned in the opposite direction to its current step, which
+     * is at or above the relocation target. That only holds if the relocation behind
+     * the stamp is the only one since the search started; otherwise some other one may
+     * have changed a key the search already went past, and the search restarts from
+     * the root.
+     *
+     * Whether it was the only one is read off the global generation counter, not the
+     * anchor's stamp: a relocation into a node above the anchor stamps nodes below
+     * its own target, which need not include the anchor, so the anchor's stamp cannot
+     * rule it out. The check is therefore conservative. The more relocations the
+     * whole tree sees per search, the more often the counter has moved on by more than
+     * one, and the resume degrades into a restart from the root, as if there were no
+     * anchor. It can only help where relocations are rare next to searches, and
+     * elsewhere costs one read of the counter per restart. The fromRoot field of the
+     * BSTFindRestart event shows which of the two a workload gets, and
+     * BSTBenchmark.mixedFromRoot measures it against restarting from the root every
+     * time.
+     *
+     * This is not per-subtree versioning. Stamps still come from the one global
+     * counter, so a search stops at a newer stamp whether or not the relocation behind
+     * it was on the search's path, and with two or more relocations racing it the
+     * search cannot tell which of its turns are still good. Only the single-relocation
+     * case resumes part way down.
+     *
+     * A node that was copied away by a rotation still routes correctly, so searches
+     * may keep walking through it, but stamps land on the copies, not on it. Such a
+     * search can end on a node whose key was relocated without having seen the stamp,
+     * so relocated and rotated nodes are flagged as moved, and the callers search
+     * again when find returns one.
+     */
+    Node find(int key, FindResult res) {
+        return find(key, res, null);
+    }
+
+    /**
+     * find for the keys of a sorted batch. path holds the nodes the search for the
+     * previous key went through, and the search starts at the deepest of them whose
+     * subtree may still hold key, rather than at the root. That is only safe while no
+     * relocation has happened since the previous search started, as a relocation is
+     * the only thing that changes the key range of a node that stays in the tree.
+     * path is then overwritten with this search, or emptied if it had to retry.
+     */
+    private Node find(int key, FindResult res, Path path) {
         Node curr = root;
         Node pred = null;
+        long upper = Long.MAX_VALUE; // keys in the subtree at curr are below this
+        int startGeneration = -1;
+        if (path != null) {
+            int i = path.seek(key, this.generation.get());
+            if (i > 0) {
+                curr = path.nodes[i];
+                pred = path.nodes[i-1];
+                upper = path.uppers[i];
+                startGeneration = path.generation;
+            }
+            path.size = i > 0 ? i : 0;
+        }
 
-        while (curr != null) {
-            if (curr.key == key) {
-                break;
-            } else if (curr.key < key) {
-                pred = curr;
-                curr = curr.right;
-            } else {
-                pred = curr;
-                curr = curr.left;
+        int restarts = 0;
+        int depth = 0;
+        retry:
+        while (true) {
+            int searchGeneration = startGeneration >= 0 ? startGeneration : this.generation.get();
+            startGeneration = -1;
+            Node leftTurn = null, leftTurnPred = null;
+            Node rightTurn = null, rightTurnPred = null;
+            if (path != null) {
+                path.generation = searchGeneration;
             }
 
-            if (pred.generation > searchGeneration) {
-                return null;
+            while (curr != null) {
+                int currKey = curr.key; // read once: a relocation may change it between two reads
+                if (METRICS) {
+                    depth++;
+                }
+                if (path != null) {
+                    path.push(curr, upper);
+                }
+                if (currKey == key) {
+                    break;
+                } else if (currKey < key) {
+                    rightTurn = curr;
+                    rightTurnPred = pred;
+                    pred = curr;
+                    curr = curr.right;
+                } else {
+                    leftTurn = curr;
+                    leftTurnPred = pred;
+                    pred = curr;
+                    curr = curr.left;
+                    upper = currKey;
+                }
+                if (curr == pred) {
+                    curr = null;
+                }
+
+                final int predGeneration = pred.generation;
+                if (predGeneration > searchGeneration) {
+                    boolean wentRight = rightTurn == pred;
+                    Node anchor = wentRight ? leftTurn : rightTurn;
+                    // only the relocation behind this stamp may have happened since we
+                    // started; another one could have changed a key above the anchor
+                    if (!RESUME || anchor == null || anchor.marked || this.generation.get() != searchGeneration + 1) {
+                        pred = null;
+                        curr = root;
+                    } else {
+                        pred = wentRight ? leftTurnPred : rightTurnPred;
+                        curr = anchor;
+                    }
+                    if (path != null) {
+                        path.size = 0; // the next key starts from the root again
+                        path = null;
+                    }
+                    BSTEvents.FindRestart restart = new BSTEvents.FindRestart();
+                    if (restart.isEnabled()) {
+                        restart.key = key;
+                        restart.restarts = restarts + 1;
+                        restart.searchGeneration = searchGeneration;
+                        restart.nodeGeneration = predGeneration;
+                        restart.fromRoot = curr == root;
+                        restart.commit();
+                    }
+                    contention.backOff(ContentionManager.Site.FIND_RESTART, restarts++);
+                    continue retry;
+                }
+            }
+
+            if (res != null) {
+                res.pred = pred;
+                res.curr = curr;
+                res.generation = searchGeneration;
+            }
+            if (METRICS) {
+                metrics.find(depth, restarts);
             }
+            return curr;
         }
+    }
+
+    public boolean contains(final int key) {
+        BSTEvents.SlowOperation event = new BSTEvents.SlowOperation();
+        event.begin();
+        boolean result = containsInternal(key, null);
+        slowOperation(event, BSTEvents.CONTAINS, key, result);
+        return result;
+    }
+
+    // commits event if the operation it timed was slower than the recording's threshold
+    private static void slowOperation(BSTEvents.SlowOperation event, String operation, int key, boolean result) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.key = key;
+            event.result = result;
+            event.commit();
+        }
+    }
+
+    private boolean containsInternal(final int key, final Path path) {
+        for (int attempt = 0; ; attempt++) {
+            Node curr = find(key, null, path);
+            if (curr == null || curr.key != key) {
+                return false;
+            }
+            if (!curr.marked) {
+                return true;
+            }
+            if (!curr.moved) {
+                return false;
+            }
+            contention.backOff(ContentionManager.Site.FIND_RESTART, attempt);
+        }
+    }
+
+    /**
+     * The smallest key >= key, or defaultValue if there is none. Like contains, the
+     * ordered queries below take no locks and allocate nothing.
+     */
+    public int ceiling(final int key, final int defaultValue) {
+        long result = nearest(key, true, true);
+        return result == NONE ? defaultValue : (int) result;
+    }
+
+    /**
+     * The smallest key > key, or defaultValue if there is none.
+     */
+    public int higher(final int key, final int defaultValue) {
+        long result = nearest(key, true, false);
+        return result == NONE ? defaultValue : (int) result;
+    }
+
+    /**
+     * The largest key <= key, or defaultValue if there is none.
+     */
+    public int floor(final int key, final int defaultValue) {
+        long result = nearest(key, false, true);
+        return result == NONE ? defaultValue : (int) result;
+    }
+
+    /**
+     * The largest key < key, or defaultValue if there is none.
+     */
+    public int lower(final int key, final int defaultValue) {
+        long result = nearest(key, false, false);
+        return result == NONE ? defaultValue : (int) result;
+    }
 
-        return new FindResult(pred, curr);
+    /**
+     * The smallest key, or defaultValue if the tree is empty.
+     */
+    public int first(final int defaultValue) {
+        return higher(Integer.MIN_VALUE, defaultValue);
     }
 
-    private FindResult find(int key) {
-        while (true) { 
+    /**
+     * The largest key, or defaultValue if the tree is empty.
+     */
+    public int last(final int defaultValue) {
+        return floor(Integer.MAX_VALUE, defaultValue);
+    }
+
+    static final long NONE = Long.MIN_VALUE; // no int key compares equal to it
+
+    /**
+     * The closest key to key on the given side (key itself too, if inclusive), or NONE.
+     * This is the search for key, remembering the last node at which it turned away
+     * from that side: the answer is either that node or the node holding key. As in
+     * find, a newer generation stamp anywhere on the path means a key may have moved
+     * past the search, and it starts over. So does an answer that turns out to be
+     * marked, or whose key changed since it was read, as it may be hiding a closer key
+     * that is being relocated.
+     */
+    long nearest(final int key, final boolean above, final boolean inclusive) {
+        retry:
+        while (true) {
             int searchGeneration = this.generation.get();
-            FindResult res = findInternal(key, searchGeneration);
-            if (res != null) {
-                return res;
+            Node best = null;
+            int bestKey = 0;
+            Node curr = right(root);
+            while (curr != null) {
+                int currKey = curr.key; // read once: a relocation may change it between two reads
+                if (curr.generation > searchGeneration) {
+                    continue retry;
+                }
+                if (currKey == key && inclusive) {
+                    best = curr;
+                    bestKey = currKey;
+                    break;
+                }
+                if (above ? currKey > key : currKey >= key) {
+                    if (above) {
+                        best = curr;
+                        bestKey = currKey;
+                    }
+                    curr = left(curr);
+                } else {
+                    if (!above) {
+                        best = curr;
+                        bestKey = currKey;
+                    }
+                    curr = right(curr);
+                }
             }
+            if (best == null) {
+                return NONE;
+            }
+            if (best.marked || best.key != bestKey) {
+                continue;
+            }
+            return bestKey;
         }
     }
 
-    public boolean contains(final int key) {
-        FindResult res = find(key);
-        return res.curr != null && res.curr.key == key && !res.curr.marked;
+    private void checkOrderStatistics() {
+        if (!options.contains(Option.ORDER_STATISTICS)) {
+            throw new IllegalStateException("rank and select need Option.ORDER_STATISTICS");
+        }
+    }
+
+    /**
+     * The number of keys smaller than key, in O(depth), from the counts kept by
+     * ORDER_STATISTICS. Exact once the helper thread has passed over the tree since
+     * the last update; until then it is off by at most the number of keys inserted
+     * or removed since.
+     */
+    public int rank(final int key) {
+        checkOrderStatistics();
+        int rank = 0;
+        Node curr = right(root);
+        while (curr != null) {
+            int currKey = curr.key;
+            if (currKey < key) {
+                rank += count(left(curr)) + (curr.marked ? 0 : 1);
+                curr = right(curr);
+            } else if (currKey > key) {
+                curr = left(curr);
+            } else {
+                rank += count(left(curr));
+                break;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * The key with i keys smaller than it (the smallest is at 0), or defaultValue if
+     * i is not below the size of the tree, in O(depth). It uses the same counts as
+     * rank, so while they lag behind, the answer may be a few places off.
+     */
+    public int select(int i, final int defaultValue) {
+        checkOrderStatistics();
+        if (i < 0) {
+            return defaultValue;
+        }
+        Node curr = right(root);
+        if (i >= count(curr)) {
+            return defaultValue;
+        }
+        long last = NONE; // the last key passed on the way down, for when the counts run out
+        while (curr != null) {
+            int currKey = curr.key;
+            boolean live = !curr.marked;
+            Node l = left(curr);
+            int before = count(l);
+            if (i < before) {
+                curr = l;
+                continue;
+            }
+            if (live) {
+                last = currKey;
+                if (i == before) {
+                    return currKey;
+                }
+            }
+            i -= before + (live ? 1 : 0);
+            curr = right(curr);
+        }
+        return last == NONE ? defaultValue : (int) last;
     }
 
     boolean validateLeaf(Node curr, int key) {
         return !curr.marked && (curr.key > key && curr.left == null || curr.key < key && curr.right == null);
     }
 
+    /**
+     * validateLeaf for an insert whose search started at searchGeneration, with empty
+     * standing for whatever an empty slot holds. The slot may have been filled and
+     * emptied again since the search; if that happened because the child's key was
+     * relocated up the tree, the key is no longer missing. Such a relocation stamps
+     * pred before emptying its slot, so a newer stamp sends the insert back to search.
+     */
+    boolean validateSlot(Node pred, int key, Node empty, int searchGeneration) {
+        int predKey = pred.key;
+        boolean result = !pred.marked && pred.generation <= searchGeneration
+                && (predKey > key && pred.left == empty || predKey < key && pred.right == empty);
+        if (METRICS && !result) {
+            metrics.validateFailed();
+        }
+        return result;
+    }
+
     boolean validate(Node pred, Node curr, boolean allow_pred_marked) {
         boolean result = (allow_pred_marked || !pred.marked) && !curr.marked && (pred.right == curr || pred.left == curr);
+        if (METRICS && !result) {
+            metrics.validateFailed();
+        }
         return result;
     }
 
+    public ContentionManager getContentionManager() {
+        return contention;
+    }
+
+    /**
+     * The counts shared by every BST in the JVM, or null unless METRICS.
+     */
+    public static BSTMetrics getMetrics() {
+        return metrics;
+    }
+
     public boolean checkBSTProperty() {
         return checkBSTProperty(root.left) && checkBSTProperty(root.right);
     }
@@ -92,14 +725,16 @@ public class BST implements BSTInterface {
             return true;
         }
         
-        if (node.left != null && !node.left.marked) {
-            if (node.left.key >= node.key || !checkBSTProperty(node.left)) {
+        Node left = left(node);
+        if (left != null && !left.marked) {
+            if (left.key >= node.key || !checkBSTProperty(left)) {
                 return false;
             }
         }
         
-        if (node.right != null && !node.right.marked) {
-            if (node.right.key <= node.key || !checkBSTProperty(node.right)) {
+        Node right = right(node);
+        if (right != null && !right.marked) {
+            if (right.key <= node.key || !checkBSTProperty(right)) {
                 return false;
             }
         }
@@ -107,191 +742,1127 @@ public class BST implements BSTInterface {
         return true;
     }    
 
-    private boolean insertInternal(final int key) {
-        while (true) {
-            FindResult res = find(key);
+    private boolean insertInternal(final int key, final FindResult res, final Path path) {
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                contention.backOff(ContentionManager.Site.INSERT_RETRY, attempt - 1);
+                if (path != null) {
+                    path.size = 0; // validation failed: search again from the root
+                }
+            }
+            find(key, res, path);
             if (res.curr != null) {
                 return false;
             }
 
             Node pred = res.pred;
-            synchronized(pred) {
-                if (validateLeaf(pred, key)) {
-                    Node node = new Node(key);
-                    if (key < pred.key) {
-                        pred.left = node;
-                    } else {
-                        pred.right = node;
-                    }
+            if (casInsert) {
+                if (pred.marked) {
+                    continue;
+                }
+                Node node = newNode(key, res);
+                VarHandle slot = key < pred.key ? LEFT : RIGHT;
+                Node witness = (Node) slot.compareAndExchange(pred, null, node);
+                if (witness == null) {
                     return true;
                 }
-            } 
+                if (witness != pred) {
+                    continue;
+                }
+                // A slot that held a child before is never null again, only closed:
+                // pred's key may have changed since we read it, and a CAS from null
+                // could not tell. Reopening it needs the lock, under which the key
+                // is stable and a node being removed is already marked.
+                if (attachLocked(pred, key, node, pred, res)) {
+                    return true;
+                }
+                continue;
+            }
+
+            if (attachLocked(pred, key, null, null, res)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean attachLocked(Node pred, int key, Node node, Node empty, FindResult res) {
+        if (nodeLocks) {
+            lock(pred);
+            final long locked = METRICS ? System.nanoTime() : 0;
+            try {
+                return attach(pred, key, node, empty, res);
+            } finally {
+                if (METRICS) {
+                    metrics.lockHeld(locked);
+                }
+                unlock(pred);
+            }
+        }
+        synchronized (pred) {
+            final long locked = METRICS ? System.nanoTime() : 0;
+            try {
+                return attach(pred, key, node, empty, res);
+            } finally {
+                if (METRICS) {
+                    metrics.lockHeld(locked);
+                }
+            }
         }
     }
 
+    // hangs node (or a new one, if it is null) off pred if the slot for key still
+    // holds empty; under pred's lock
+    private boolean attach(Node pred, int key, Node node, Node empty, FindResult res) {
+        if (!validateSlot(pred, key, empty, res.generation)) {
+            return false;
+        }
+        if (node == null) {
+            node = newNode(key, res);
+        }
+        if (key < pred.key) {
+            pred.left = node;
+        } else {
+            pred.right = node;
+        }
+        return true;
+    }
+
     public boolean insert(final int key) {
-        boolean result = insertInternal(key);
+        BSTEvents.SlowOperation event = new BSTEvents.SlowOperation();
+        event.begin();
+        FindResult res = scratch.get();
+        boolean result = insertInternal(key, res, null);
         if (result) {
-            size.incrementAndGet();
-            keysum.addAndGet(key);
+            if (counters != null) {
+                counterCell(res).add(1, key);
+            } else {
+                size.incrementAndGet();
+                keysum.addAndGet(key);
+            }
         }
+        slowOperation(event, BSTEvents.INSERT, key, result);
         return result;
     }
 
     private boolean removeRight(Node pred, Node curr) {
-        if (curr.left == null) {
+        if (casInsert) {
+            closeEmptySlots(curr);
+        }
+
+        if (left(curr) == null) {
             curr.marked = true;
-            pred.generation = Integer.max(pred.generation, curr.generation);
-            pred.right = curr.right;
+            raiseGeneration(pred, curr.generation);
+            pred.right = vacate(pred, right(curr));
             return true;
         }
 
-        if (curr.right == null) {
+        if (right(curr) == null) {
             curr.marked = true;
-            pred.generation = Integer.max(pred.generation, curr.generation);
-            pred.right = curr.left;
+            raiseGeneration(pred, curr.generation);
+            pred.right = vacate(pred, left(curr));
             return true;
         }
 
         Node smallest_in_right = curr.right;
         Node smallestPred = curr;
-        Node smallest_in_right_next = smallest_in_right.left;
+        Node smallest_in_right_next = left(smallest_in_right);
         while (smallest_in_right_next != null) {
             smallestPred = smallest_in_right;
             smallest_in_right = smallest_in_right_next;
-            smallest_in_right_next = smallest_in_right.left;
+            smallest_in_right_next = left(smallest_in_right);
         }
         
-        synchronized (smallestPred) {
-            synchronized (smallest_in_right) {
-                if (!validate(smallestPred, smallest_in_right, curr == smallestPred) || smallest_in_right.left != null) {
-                    return false; // validation failed, retry
-                }
-
-
-                curr.key = smallest_in_right.key;
-
-                int changeGeneration = this.generation.incrementAndGet();
-                if (smallest_in_right.right != null) {
-                    smallest_in_right.right.generation = changeGeneration;
-                } else {
-                    smallestPred.generation = changeGeneration;
-                }
-
-                // remove smallest in right from the tree
-                smallest_in_right.marked = true;
-
-                if (curr != smallestPred) {
-                    smallestPred.left = smallest_in_right.right;
-                } else {
-                    curr.right = smallest_in_right.right;
-                }
-            }
-        }
-        return true;
+        return relocateLocked(curr, smallestPred, smallest_in_right, true);
     }
 
     private boolean removeLeft(Node pred, Node curr) {
-        if (curr.left == null)
+        if (casInsert) {
+            closeEmptySlots(curr);
+        }
+
+        if (left(curr) == null)
         {
             curr.marked = true;
-            pred.generation = Integer.max(pred.generation, curr.generation);
-            pred.left = curr.right;
+            raiseGeneration(pred, curr.generation);
+            pred.left = vacate(pred, right(curr));
             return true;
         }
 
-        if (curr.right == null) {
+        if (right(curr) == null) {
             curr.marked = true;
-            pred.generation = Integer.max(pred.generation, curr.generation);
-            pred.left = curr.left;
+            raiseGeneration(pred, curr.generation);
+            pred.left = vacate(pred, left(curr));
             return true;
         }
 
         Node biggest_in_left = curr.left;
         Node biggestPred = curr;
-        Node biggest_in_left_next = biggest_in_left.right;
+        Node biggest_in_left_next = right(biggest_in_left);
         while (biggest_in_left_next != null) {
             biggestPred = biggest_in_left;
             biggest_in_left = biggest_in_left_next;
-            biggest_in_left_next = biggest_in_left.right;
+            biggest_in_left_next = right(biggest_in_left);
         }
 
-        synchronized (biggestPred) {
-            synchronized (biggest_in_left) {
-                if (!validate(biggestPred, biggest_in_left, curr == biggestPred) || biggest_in_left.right != null) {
-                    return false; // validation failed, retry
+        return relocateLocked(curr, biggestPred, biggest_in_left, false);
+    }
+
+    /**
+     * Locks n, the node next to curr in key order, and p, its parent, and relocates
+     * n's key up into curr (see relocate). The caller holds curr, which may be p.
+     * Returns false if a lock is held or the nodes changed, for the caller to retry.
+     */
+    private boolean relocateLocked(Node curr, Node p, Node n, boolean fromRight) {
+        if (nodeLocks) {
+            boolean lockP = p != curr;
+            if (lockP && !tryLock(p)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                return false;
+            }
+            if (!tryLock(n)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                if (lockP) {
+                    unlock(p);
+                }
+                return false;
+            }
+            final long locked = METRICS ? System.nanoTime() : 0;
+            try {
+                return relocate(curr, p, n, fromRight);
+            } finally {
+                if (METRICS) {
+                    metrics.lockHeld(locked);
+                }
+                unlock(n);
+                if (lockP) {
+                    unlock(p);
                 }
+            }
+        }
+        synchronized (p) {
+            synchronized (n) {
+                final long locked = METRICS ? System.nanoTime() : 0;
+                try {
+                    return relocate(curr, p, n, fromRight);
+                } finally {
+                    if (METRICS) {
+                        metrics.lockHeld(locked);
+                    }
+                }
+            }
+        }
+    }
 
-                curr.key = biggest_in_left.key;
+    // moves the key of n, the smallest key right of curr (fromRight) or the biggest
+    // left of it, up into curr and unlinks n from below its parent p
+    private boolean relocate(Node curr, Node p, Node n, boolean fromRight) {
+        if (!validate(p, n, curr == p) || !closeLeaf(n, fromRight ? LEFT : RIGHT)) {
+            return false; // validation failed, retry
+        }
 
-                int changeGeneration = this.generation.incrementAndGet();
-                if (biggest_in_left.left != null) {
-                    biggest_in_left.left.generation = changeGeneration;
-                } else {
-                    biggestPred.generation = changeGeneration;
+        moveKey(curr, n);
+
+        Node child = fromRight ? right(n) : left(n);
+        int changeGeneration = this.generation.incrementAndGet();
+        if (child != null) {
+            raiseGeneration(child, changeGeneration);
+        } else {
+            raiseGeneration(p, changeGeneration);
+        }
+
+        // remove n from the tree
+        n.moved = true;
+        n.marked = true;
+
+        // n is the leftmost node of curr's right subtree, or the rightmost of its left
+        // one, so it hangs on the inner side of p unless p is curr itself
+        if (fromRight == (curr != p)) {
+            p.left = vacate(p, child);
+        } else {
+            p.right = vacate(p, child);
+        }
+        return true;
+    }
+
+    private boolean removeInternal(final int key, final FindResult res, final Path path) {
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                contention.backOff(ContentionManager.Site.REMOVE_RETRY, attempt - 1);
+                if (path != null) {
+                    path.size = 0; // validation failed: search again from the root
                 }
+            }
+            find(key, res, path);
 
-                // remove biggest in left from the tree
-                biggest_in_left.marked = true;
+            if (res.curr == null) {
+                return false;
+            }
+            if (res.curr.marked) {
+                if (res.curr.moved) {
+                    continue;
+                }
+                return false;
+            }
+
+            if (lockAndUnlink(res.pred, res.curr, key, END_ANY)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Locks pred and curr and removes key from curr, a child of pred, provided curr is
+     * at the given end of the tree (see isEnd). Returns false if a lock was busy or
+     * validation failed, and the caller has to search again.
+     */
+    private boolean lockAndUnlink(Node pred, Node curr, int key, int end) {
+        if (nodeLocks) {
+            // never wait holding pred: back off into a fresh search instead
+            if (!tryLock(pred)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                return false;
+            }
+            if (!tryLock(curr)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                unlock(pred);
+                return false;
+            }
+            final long locked = METRICS ? System.nanoTime() : 0;
+            try {
+                return (end == END_ANY || isEnd(pred, curr, end)) && unlink(pred, curr, key);
+            } finally {
+                if (METRICS) {
+                    metrics.lockHeld(locked);
+                }
+                unlock(curr);
+                unlock(pred);
+            }
+        }
+
+        synchronized (pred) {
+            synchronized (curr) {
+                final long locked = METRICS ? System.nanoTime() : 0;
+                try {
+                    return (end == END_ANY || isEnd(pred, curr, end)) && unlink(pred, curr, key);
+                } finally {
+                    if (METRICS) {
+                        metrics.lockHeld(locked);
+                    }
+                }
+            }
+        }
+    }
+
+    // removes key from curr, a child of pred, under the locks of both
+    private boolean unlink(Node pred, Node curr, int key) {
+        if (!validate(pred, curr, false) || curr.key != key) {
+            return false;
+        }
+
+        // a remove with one child or none is done in the first attempt; only a
+        // relocation can wait, and it is only committed if it waited long enough
+        BSTEvents.RelocateLockWait wait = new BSTEvents.RelocateLockWait();
+        wait.begin();
+        final boolean fromLeft = curr == pred.left;
+        int attempt = 0;
+        if (fromLeft) {
+            for (; !removeLeft(pred, curr); attempt++) {
+                contention.backOff(ContentionManager.Site.RELOCATE_RETRY, attempt);
+            }
+        } else {
+            for (; !removeRight(pred, curr); attempt++) {
+                contention.backOff(ContentionManager.Site.RELOCATE_RETRY, attempt);
+            }
+        }
+        wait.end();
+        if (wait.shouldCommit()) {
+            wait.key = key;
+            wait.side = fromLeft ? "left" : "right";
+            wait.attempts = attempt + 1;
+            wait.nodeLocks = nodeLocks;
+            wait.commit();
+        }
+        return true;
+    }
+
+    public boolean remove(final int key) {
+        BSTEvents.SlowOperation event = new BSTEvents.SlowOperation();
+        event.begin();
+        FindResult res = scratch.get();
+        boolean result = removeInternal(key, res, null);
+        if (result) {
+            if (counters != null) {
+                counterCell(res).add(-1, -key);
+            } else {
+                size.decrementAndGet();
+                keysum.addAndGet(-key);
+            }
+        }
+        slowOperation(event, BSTEvents.REMOVE, key, result);
+
+        return result;
+    }
+
+    /**
+     * Removes and returns the smallest key, or defaultValue if the tree is empty.
+     */
+    public int pollFirst(final int defaultValue) {
+        return pollFirst(1, defaultValue);
+    }
 
-                if (curr != biggestPred) {
-                    biggestPred.right = biggest_in_left.left;
+    /**
+     * Removes and returns the largest key, or defaultValue if the tree is empty.
+     */
+    public int pollLast(final int defaultValue) {
+        return pollLast(1, defaultValue);
+    }
+
+    /**
+     * Removes and returns one of the spread smallest keys, picked at random, or
+     * defaultValue if the tree is empty. With spread 1 this is the strict pollFirst: it
+     * removes the node at the bottom of the left spine, and only once it has checked,
+     * under the locks of that node and its parent, that no smaller key is left. With
+     * a larger spread the order is relaxed: the key is picked by a walk that does not
+     * see concurrent updates atomically, so it is one of about the spread smallest.
+     *
+     * Consumers that all remove the smallest key queue up on the locks of the same
+     * few nodes at the bottom of the left spine, and all but one of them fail and
+     * search again. Spreading them over the smallest keys (a spray, as in SprayList)
+     * lets them remove different nodes in parallel; a spread of about the number of
+     * consumers keeps the order close to strict.
+     */
+    public int pollFirst(final int spread, final int defaultValue) {
+        long result = poll(true, spread);
+        return result == NONE ? defaultValue : (int) result;
+    }
+
+    /**
+     * Removes and returns one of the spread largest keys, like pollFirst.
+     */
+    public int pollLast(final int spread, final int defaultValue) {
+        long result = poll(false, spread);
+        return result == NONE ? defaultValue : (int) result;
+    }
+
+    private long poll(final boolean first, final int spread) {
+        if (spread < 1) {
+            throw new IllegalArgumentException("spread must be at least 1");
+        }
+        BSTEvents.SlowOperation event = new BSTEvents.SlowOperation();
+        event.begin();
+        FindResult res = scratch.get();
+        Path stack = res.path;
+        if (stack == null) {
+            stack = res.path = new Path();
+        }
+        for (int attempt = 0; ; attempt++) {
+            if (attempt > 0) {
+                contention.backOff(ContentionManager.Site.REMOVE_RETRY, attempt - 1);
+            }
+            boolean found;
+            if (spread == 1) {
+                found = spineEnd(first, res);
+            } else {
+                found = nthNode(first, ThreadLocalRandom.current().nextInt(spread), res, stack);
+                stack.clear();
+            }
+            if (!found) {
+                slowOperation(event, BSTEvents.REMOVE, 0, false);
+                return NONE;
+            }
+            Node pred = res.pred;
+            Node curr = res.curr;
+            int key = curr.key;
+            if (lockAndUnlink(pred, curr, key, spread == 1 ? (first ? END_FIRST : END_LAST) : END_ANY)) {
+                if (counters != null) {
+                    counterCell(res).add(-1, -key);
                 } else {
-                    curr.left = biggest_in_left.left;
+                    size.decrementAndGet();
+                    keysum.addAndGet(-key);
                 }
+                slowOperation(event, BSTEvents.REMOVE, key, true);
+                return key;
             }
         }
+    }
 
+    /**
+     * The node at the bottom of the left spine (first) or of the right one, in res.curr,
+     * and its parent in res.pred; false if the tree is empty. Whether it still holds
+     * the smallest (largest) key is only known under the locks of both (see isEnd).
+     */
+    private boolean spineEnd(final boolean first, final FindResult res) {
+        Node pred = root;
+        Node curr = right(root);
+        if (curr == null) {
+            return false;
+        }
+        for (Node next; (next = first ? left(curr) : right(curr)) != null; ) {
+            pred = curr;
+            curr = next;
+        }
+        res.pred = pred;
+        res.curr = curr;
         return true;
     }
 
-    private boolean removeInternal(final int key) {
+    /**
+     * The node holding the key skip places after the smallest (or before the largest)
+     * one, or the last key there is if there are fewer, in res.curr and its parent in
+     * res.pred; false if there are no keys. An in-order walk that only reads, so under
+     * updates it may see a key twice or miss one, which is fine for picking a key to
+     * try to remove. stack holds the path from the root to the node the walk is at, so
+     * the parent of each node is the one below it.
+     */
+    private boolean nthNode(final boolean first, int skip, final FindResult res, final Path stack) {
+        res.curr = null;
+        stack.push(root, 1); // the sentinel's key is not in the tree
+        Node n = right(root);
         while (true) {
-            FindResult res = find(key);
+            while (n != null) {
+                stack.push(n, 0);
+                n = first ? left(n) : right(n);
+            }
+            while (stack.uppers[stack.size - 1] != 0) {
+                stack.pop();
+                if (stack.size == 0) {
+                    return res.curr != null;
+                }
+            }
+            int top = stack.size - 1;
+            Node node = stack.nodes[top];
+            stack.uppers[top] = 1;
+            if (!node.marked) {
+                res.pred = stack.nodes[top - 1];
+                res.curr = node;
+                if (skip-- == 0) {
+                    return true;
+                }
+            }
+            n = first ? right(node) : left(node);
+        }
+    }
+
+    // which end of the tree lockAndUnlink has to find curr at, if any
+    private static final int END_ANY = 0, END_FIRST = 1, END_LAST = 2;
+
+    /**
+     * Under the locks of pred and curr: curr is still the parent's child at the bottom
+     * of the left (END_FIRST) or right spine, with nothing below it on that side, so it
+     * holds the smallest (largest) key in the tree. No update moves a node that is not
+     * marked off a spine, so checking the last step is enough. In CAS_INSERT mode the
+     * empty slots of curr are closed first, as removeLeft/removeRight would, so that no
+     * insert can attach a closer key below it after the check.
+     */
+    private boolean isEnd(Node pred, Node curr, int end) {
+        if (casInsert) {
+            closeEmptySlots(curr);
+        }
+        boolean first = end == END_FIRST;
+        Node step = first && pred != root ? pred.left : pred.right;
+        return step == curr && (first ? left(curr) : right(curr)) == null;
+    }
+
+    /**
+     * insert for each of sortedKeys, which must be in increasing order. Bit i of the
+     * result is set if keys[i] was inserted (see BSTInterface). Each search starts
+     * where its path leaves the previous key's (see find), and size and keysum are
+     * updated once for the whole batch.
+     */
+    public long[] insertAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BATCH_INSERT);
+    }
+
+    /**
+     * remove for each of sortedKeys, like insertAll.
+     */
+    public long[] removeAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BATCH_REMOVE);
+    }
+
+    /**
+     * contains for each of sortedKeys, like insertAll.
+     */
+    public long[] containsAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BATCH_CONTAINS);
+    }
+
+    private static final int BATCH_INSERT = 0, BATCH_REMOVE = 1, BATCH_CONTAINS = 2;
+
+    private long[] batch(final int[] sortedKeys, final int op) {
+        for (int i = 1; i < sortedKeys.length; i++) {
+            if (sortedKeys[i] < sortedKeys[i-1]) {
+                throw new IllegalArgumentException("keys must be sorted");
+            }
+        }
+        FindResult res = scratch.get();
+        Path path = res.path;
+        if (path == null) {
+            path = res.path = new Path();
+        }
+        path.clear();
+
+        long[] result = new long[(sortedKeys.length + 63) >>> 6];
+        long delta = 0, sum = 0;
+        for (int i = 0; i < sortedKeys.length; i++) {
+            int key = sortedKeys[i];
+            boolean done;
+            if (op == BATCH_INSERT) {
+                done = insertInternal(key, res, path);
+                if (done) {
+                    delta++;
+                    sum += key;
+                }
+            } else if (op == BATCH_REMOVE) {
+                done = removeInternal(key, res, path);
+                if (done) {
+                    delta--;
+                    sum -= key;
+                }
+            } else {
+                done = containsInternal(key, path);
+            }
+            if (done) {
+                result[i >>> 6] |= 1L << i;
+            }
+        }
+        path.clear(); // do not keep removed nodes reachable
+
+        if (delta != 0 || sum != 0) {
+            if (counters != null) {
+                counterCell(res).add(delta, sum);
+            } else {
+                size.addAndGet(delta);
+                keysum.addAndGet(sum);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Passes every key in [lo, hi] to action, in increasing order, without taking any
+     * locks. Keys are reported at most once each, and a key that is in the tree for the
+     * whole scan is always reported; keys inserted or removed during the scan may or
+     * may not be.
+     *
+     * The scan is an in-order walk with its own stack. A relocation by removeLeft or
+     * removeRight can move a key the scan has not reached yet up into a node it has
+     * already passed, and a rotation copies nodes away from under it. Both leave a
+     * trace on the walk ahead (a newer generation stamp, or a moved node), and when
+     * the scan meets one it seeks again from the root, starting after the last key it
+     * reported rather than at lo.
+     */
+    public void rangeScan(int lo, int hi, IntConsumer action) {
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        long from = lo; // smallest key not reported yet; long so that hi == MAX_VALUE ends
+
+        retry:
+        while (from <= hi) {
+            int scanGeneration = this.generation.get();
+            stack.clear();
+            if (!pushLeftSpine(stack, right(root), from, scanGeneration)) {
+                continue;
+            }
+            while (!stack.isEmpty()) {
+                Node n = stack.pop();
+                boolean marked = n.marked; // before moved, which is set first
+                if (n.generation > scanGeneration || n.moved) {
+                    continue retry;
+                }
+                int key = n.key;
+                if (key > hi) {
+                    return;
+                }
+                if (!marked && key >= from) {
+                    action.accept(key);
+                    from = key + 1L;
+                }
+                if (!pushLeftSpine(stack, right(n), from, scanGeneration)) {
+                    continue retry;
+                }
+            }
+            return;
+        }
+    }
 
-            if (res.curr == null || res.curr.marked) {
+    // pushes the nodes of the subtree at n that may hold keys >= from, smallest on top;
+    // false if the walk ran into a change made since scanGeneration (nodes already on
+    // the stack are checked again when they are popped)
+    private static boolean pushLeftSpine(ArrayDeque<Node> stack, Node n, long from, int scanGeneration) {
+        while (n != null) {
+            if (n.generation > scanGeneration || n.moved) {
                 return false;
             }
+            if (n.key >= from) {
+                stack.push(n);
+                n = left(n);
+            } else {
+                n = right(n);
+            }
+        }
+        return true;
+    }
 
-            Node pred = res.pred;
-            Node curr = res.curr;
+    /**
+     * Number of keys in [lo, hi], with the same guarantees as rangeScan.
+     */
+    public int count(int lo, int hi) {
+        int[] result = {0};
+        rangeScan(lo, hi, key -> result[0]++);
+        return result[0];
+    }
 
-            synchronized (pred) {
-                synchronized (curr) {
-                    if (!validate(pred, curr, false))
-                        continue;
+    /**
+     * Fills an empty tree with sortedKeys, which must be strictly increasing, by
+     * building a perfectly balanced tree off to the side and publishing it with a
+     * single write to the root. Concurrent operations see either the empty tree or
+     * all of the keys. Throws IllegalStateException if the tree is not empty.
+     */
+    public void bulkLoad(int[] sortedKeys) {
+        checkSorted(sortedKeys);
+        publish(build(sortedKeys, 0, sortedKeys.length), sortedKeys);
+    }
 
-                    if (curr == pred.left) {
-                        while (!removeLeft(pred, curr)) {}
-                        return true;
-                    } else {
-                        while (!removeRight(pred, curr)) {}
-                        return true;
+    /**
+     * bulkLoad that builds the two halves of every subtree of more than
+     * PARALLEL_BUILD_THRESHOLD keys in parallel, on the common fork/join pool.
+     */
+    public void bulkLoadParallel(int[] sortedKeys) {
+        checkSorted(sortedKeys);
+        publish(ForkJoinPool.commonPool().invoke(new BuildTask(sortedKeys, 0, sortedKeys.length)), sortedKeys);
+    }
+
+    static final int PARALLEL_BUILD_THRESHOLD = 1 << 13;
+
+    private static void checkSorted(int[] keys) {
+        long previous = Integer.MIN_VALUE; // the root sentinel's key
+        for (int key : keys) {
+            if (key <= previous) {
+                throw new IllegalArgumentException("keys must be strictly increasing and greater than Integer.MIN_VALUE");
+            }
+            previous = key;
+        }
+    }
+
+    // the balanced subtree holding keys[from, to)
+    private Node build(int[] keys, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        int mid = (from + to) >>> 1;
+        Node n = newNode(keys[mid], null);
+        n.left = build(keys, from, mid);
+        n.right = build(keys, mid + 1, to);
+        refresh(n);
+        return n;
+    }
+
+    private final class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+        private final int[] keys;
+        private final int from, to;
+
+        BuildTask(int[] keys, int from, int to) {
+            this.keys = keys;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Node compute() {
+            if (to - from <= PARALLEL_BUILD_THRESHOLD) {
+                return build(keys, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            BuildTask left = new BuildTask(keys, from, mid);
+            left.fork();
+            Node n = newNode(keys[mid], null);
+            n.right = new BuildTask(keys, mid + 1, to).compute();
+            n.left = left.join();
+            refresh(n);
+            return n;
+        }
+    }
+
+    // the volatile write of root.right publishes every node built before it
+    private void publish(Node subtree, int[] keys) {
+        if (nodeLocks) {
+            lock(root);
+            try {
+                attachRoot(subtree);
+            } finally {
+                unlock(root);
+            }
+        } else {
+            synchronized (root) {
+                attachRoot(subtree);
+            }
+        }
+        long sum = 0;
+        for (int key : keys) {
+            sum += key;
+        }
+        if (counters != null) {
+            counters.cell().add(keys.length, sum);
+        } else {
+            size.addAndGet(keys.length);
+            keysum.addAndGet(sum);
+        }
+    }
+
+    private StripedCounters.Cell counterCell(FindResult res) {
+        StripedCounters.Cell cell = res.cell;
+        if (cell == null) {
+            cell = res.cell = counters.cell();
+        }
+        return cell;
+    }
+
+    static int height(Node n) {
+        return n == null ? 0 : n.height;
+    }
+
+    private static short heightOf(Node n) {
+        return (short) Math.min(Short.MAX_VALUE, 1 + Math.max(height(left(n)), height(right(n))));
+    }
+
+    static int count(Node n) {
+        return n == null ? 0 : n.count;
+    }
+
+    // recomputes n's height and count from its children's
+    private static void refresh(Node n) {
+        n.height = heightOf(n);
+        n.count = count(left(n)) + count(right(n)) + (n.marked ? 0 : 1);
+    }
+
+    // under root's lock
+    private void attachRoot(Node subtree) {
+        Node current = root.right;
+        if ((current != null && current != root) || !RIGHT.compareAndSet(root, current, subtree)) {
+            throw new IllegalStateException("bulkLoad needs an empty tree");
+        }
+    }
+
+    /**
+     * Rotates c, a child of n, up into n's place below p. n and c are not changed in
+     * place: both are replaced by fresh copies, so a search that already went past p
+     * still walks a consistent (if old) shape. The originals are flagged as moved
+     * and marked, which makes every update that locked them fail validation and retry.
+     * Returns the copy of c, now a child of p, or null if the nodes changed under us.
+     */
+    private Node rotate(Node p, Node n, Node c) {
+        if (c == null) {
+            return null;
+        }
+        if (nodeLocks) {
+            // the rebalancer skips nodes it cannot lock rather than wait for them
+            if (!tryLock(p)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                return null;
+            }
+            if (!tryLock(n)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                unlock(p);
+                return null;
+            }
+            if (!tryLock(c)) {
+                if (METRICS) {
+                    metrics.lockBusy();
+                }
+                unlock(n);
+                unlock(p);
+                return null;
+            }
+            final long locked = METRICS ? System.nanoTime() : 0;
+            try {
+                return rotateLocked(p, n, c);
+            } finally {
+                if (METRICS) {
+                    metrics.lockHeld(locked);
+                }
+                unlock(c);
+                unlock(n);
+                unlock(p);
+            }
+        }
+        synchronized (p) {
+            synchronized (n) {
+                synchronized (c) {
+                    final long locked = METRICS ? System.nanoTime() : 0;
+                    try {
+                        return rotateLocked(p, n, c);
+                    } finally {
+                        if (METRICS) {
+                            metrics.lockHeld(locked);
+                        }
                     }
                 }
             }
         }
     }
 
-    public boolean remove(final int key) {
-        boolean result = removeInternal(key);
-        if (result) {
-            size.decrementAndGet();
-            keysum.addAndGet(-key);
+    private Node rotateLocked(Node p, Node n, Node c) {
+        boolean leftRotation = n.right == c;
+        if (p.marked || n.marked || c.marked || (p.left != n && p.right != n) || (!leftRotation && n.left != c)) {
+            return null;
+        }
+        if (casInsert) {
+            closeEmptySlots(n);
+            closeEmptySlots(c);
         }
 
-        return result;
+        Node nCopy = copyNode(n);
+        Node cCopy = copyNode(c);
+        if (leftRotation) {
+            nCopy.left = left(n);
+            nCopy.right = left(c);
+            cCopy.left = nCopy;
+            cCopy.right = right(c);
+        } else {
+            nCopy.right = right(n);
+            nCopy.left = right(c);
+            cCopy.right = nCopy;
+            cCopy.left = left(c);
+        }
+        // cCopy takes n's place, so it must carry any stamp a relocation left on n as
+        // well: a search that started before that relocation has to see it at cCopy
+        nCopy.generation = n.generation;
+        cCopy.generation = Math.max(n.generation, c.generation);
+        refresh(nCopy);
+        refresh(cCopy);
+
+        // moved before marked: whoever sees the mark also sees why
+        n.moved = true;
+        c.moved = true;
+        n.marked = true;
+        c.marked = true;
+        if (p.left == n) {
+            p.left = cCopy;
+        } else {
+            p.right = cCopy;
+        }
+        return cCopy;
+    }
+
+    /**
+     * Brings the subtree rooted at n, a child of p, back within AVL balance, assuming
+     * the heights stored in its children are current. Returns the number of rotations.
+     */
+    private int rebalance(Node p, Node n) {
+        int rotations = 0;
+        while (n != null && !n.marked) {
+            Node l = left(n), r = right(n);
+            int hl = height(l), hr = height(r);
+            Node top;
+            if (hr > hl + 1) {
+                if (height(left(r)) > height(right(r))) {
+                    r = rotate(n, r, left(r));
+                    if (r == null) {
+                        break;
+                    }
+                    rotations++;
+                }
+                top = rotate(p, n, r);
+            } else if (hl > hr + 1) {
+                if (height(right(l)) > height(left(l))) {
+                    l = rotate(n, l, right(l));
+                    if (l == null) {
+                        break;
+                    }
+                    rotations++;
+                }
+                top = rotate(p, n, l);
+            } else {
+                refresh(n);
+                break;
+            }
+            if (top == null) {
+                break;
+            }
+            rotations++;
+            // the copy of n went down a level and may now lean the other way
+            Node demoted = hr > hl ? left(top) : right(top);
+            rotations += rebalance(top, demoted);
+            refresh(top);
+            n = top;
+        }
+        return rotations;
+    }
+
+    /**
+     * Walks the whole tree bottom-up, recomputing heights and counts and, with
+     * RELAXED_BALANCE, rotating wherever the subtrees of a node differ in height by
+     * more than one. The walk keeps its own stack because the tree it is meant to fix
+     * may be a list. Heights and counts are only ever approximate while updates run
+     * concurrently; the next pass corrects them. Passes do not overlap, as one would
+     * skip whatever the other just copied away. Returns the number of rotations
+     * performed.
+     */
+    int rebalancePass() {
+        synchronized (passLock) {
+            return rebalanceAll();
+        }
+    }
+
+    // The stack is the path from the root to the node the walk is at, so the parent of
+    // each node is the one below it; walked counts the children of each node already
+    // walked. Both are reused across passes and only touched under passLock.
+    private Node[] walkNodes = new Node[64];
+    private byte[] walked = new byte[64];
+
+    private int rebalanceAll() {
+        int rotations = 0;
+        int size = 0;
+        walkNodes[size] = root;
+        walked[size++] = 1; // the root sentinel's left is always empty
+        while (size > 0) {
+            int top = size - 1;
+            Node n = walkNodes[top];
+            if (n.marked) {
+                walkNodes[--size] = null;
+            } else if (walked[top] < 2) {
+                Node child = walked[top]++ == 0 ? left(n) : right(n);
+                if (child != null) {
+                    if (size == walkNodes.length) {
+                        walkNodes = Arrays.copyOf(walkNodes, size * 2);
+                        walked = Arrays.copyOf(walked, size * 2);
+                    }
+                    walkNodes[size] = child;
+                    walked[size++] = 0;
+                }
+            } else {
+                walkNodes[--size] = null;
+                if (top == 0) {
+                    break;
+                }
+                if (balance) {
+                    rotations += rebalance(walkNodes[top - 1], n);
+                } else {
+                    refresh(n);
+                }
+            }
+        }
+        return rotations;
+    }
+
+    /**
+     * Background helper for RELAXED_BALANCE and ORDER_STATISTICS. It pauses between
+     * passes, halving the pause after a pass that rotated and doubling it (up to a
+     * second) after one that did not. Recounting alone does not shorten the pause, so
+     * with ORDER_STATISTICS but no rotations the counts trail updates by up to a second
+     * plus a pass. It only holds the tree weakly, and
+     * exits once the tree is unreachable.
+     */
+    private static final class Rebalancer extends Thread {
+        private static final long MIN_PAUSE_MILLIS = 1;
+        private static final long MAX_PAUSE_MILLIS = 1000;
+        private final WeakReference<BST> tree;
+
+        Rebalancer(BST tree) {
+            super("BST-rebalancer");
+            setDaemon(true);
+            this.tree = new WeakReference<>(tree);
+        }
+
+        @Override
+        public void run() {
+            long pause = MIN_PAUSE_MILLIS;
+            while (true) {
+                try {
+                    Thread.sleep(pause);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                BST t = tree.get();
+                if (t == null) {
+                    return;
+                }
+                int rotations = t.rebalancePass();
+                t = null;
+                pause = rotations > 0 ? Math.max(MIN_PAUSE_MILLIS, pause / 2) : Math.min(MAX_PAUSE_MILLIS, pause * 2);
+            }
+        }
+    }
+
+    /**
+     * Stops the RELAXED_BALANCE/ORDER_STATISTICS helper thread, if there is one. The
+     * tree stays correct, it just no longer rebalances, and its counts stop following
+     * updates until the next call to rebalancePass.
+     */
+    public void stopRebalancing() {
+        if (rebalancer != null) {
+            rebalancer.interrupt();
+        }
+    }
+
+    // {number of keys, sum of their depths}; the child of the root sentinel has depth 1
+    long[] depthTotals() {
+        long nodes = 0, depthSum = 0;
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        ArrayDeque<Integer> depths = new ArrayDeque<>();
+        for (Node n : new Node[] { left(root), right(root) }) {
+            if (n != null) {
+                stack.push(n);
+                depths.push(1);
+            }
+        }
+        while (!stack.isEmpty()) {
+            Node n = stack.pop();
+            int depth = depths.pop();
+            if (!n.marked) {
+                nodes++;
+                depthSum += depth;
+            }
+            Node l = left(n), r = right(n);
+            if (l != null) {
+                stack.push(l);
+                depths.push(depth + 1);
+            }
+            if (r != null) {
+                stack.push(r);
+                depths.push(depth + 1);
+            }
+        }
+        return new long[] { nodes, depthSum };
+    }
+
+    /**
+     * Average number of nodes a search visits to reach a key that is in the tree. Not
+     * linearizable; meant for statistics once the updates have stopped.
+     */
+    public double averageDepth() {
+        long[] totals = depthTotals();
+        return totals[0] == 0 ? 0 : totals[1] / (double) totals[0];
     }
 
     public int size() {
+        if (counters != null) {
+            return (int) (snapshotCounters ? counters.snapshotSize() : counters.size());
+        }
         return this.size.intValue();
     }
 
     public String getName() {
-        return "";
+        return "BST";
     }
 
     public long getKeysum() {
+        if (counters != null) {
+            return snapshotCounters ? counters.snapshotKeysum() : counters.keysum();
+        }
         return this.keysum.get();
     }
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package algorithms;
+
+import java.lang.management.ManagementFactory;
+
+public class BSTAllocationTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting BST Allocation Tests...");
+        
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!bean.isThreadAllocatedMemorySupported()) {
+            System.out.println("Thread allocation accounting unsupported, skipping");
+            return;
+        }
+        bean.setThreadAllocatedMemoryEnabled(true);
+        
+        testContainsDoesNotAllocate(bean, new BST());
+        testContainsDoesNotAllocate(bean, new BST(BST.Option.CAS_INSERT));
+        testOrderedQueriesDoNotAllocate(bean, new BST());
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testContainsDoesNotAllocate(com.sun.management.ThreadMXBean bean, BST bst) {
+        System.out.println("Testing contains allocation with options " + bst.options + "...");
+        final int ops = 1000000;
+        final long tid = Thread.currentThread().getId();
+        
+        java.util.Random rng = new java.util.Random(1);
+        for (int i = 0; i < 10000; i++) {
+            bst.insert(rng.nextInt(20000));
+        }
+        
+        // warm up so that the measured loop runs compiled code
+        int found = 0;
+        for (int i = 0; i < 5 * ops; i++) {
+            if (bst.contains(i % 20000)) found++;
+        }
+        
+        // the same loop without contains, to subtract what the measurement itself allocates
+        long before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            if ((i % 20000) < 0) found++;
+        }
+        long overhead = bean.getThreadAllocatedBytes(tid) - before;
+        
+        before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            if (bst.contains(i % 20000)) found++;
+        }
+        long allocated = bean.getThreadAllocatedBytes(tid) - before - overhead;
+        
+        System.out.println(allocated + " bytes allocated over " + ops + " contains (" + found + " found)");
+        // even one 16-byte object every thousand calls would add up to 16000 bytes here;
+        // the slack only covers what the MXBean may account to the thread on its own
+        assert allocated < 1024 : "contains should not allocate, but allocated " + allocated + " bytes over " + ops + " calls";
+        
+        System.out.println("Allocation tests passed");
+    }
+    
+    private static void testOrderedQueriesDoNotAllocate(com.sun.management.ThreadMXBean bean, BST bst) {
+        System.out.println("Testing ordered query allocation with options " + bst.options + "...");
+        final int ops = 1000000;
+        final long tid = Thread.currentThread().getId();
+        
+        java.util.Random rng = new java.util.Random(1);
+        for (int i = 0; i < 10000; i++) {
+            bst.insert(rng.nextInt(20000));
+        }
+        
+        long found = 0;
+        for (int i = 0; i < 5 * ops; i++) {
+            found += bst.ceiling(i % 20000, 0) + bst.floor(i % 20000, 0);
+        }
+        
+        long before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            found += (i % 20000) < 0 ? 1 : 0;
+        }
+        long overhead = bean.getThreadAllocatedBytes(tid) - before;
+        
+        before = bean.getThreadAllocatedBytes(tid);
+        for (int i = 0; i < ops; i++) {
+            found += bst.ceiling(i % 20000, 0) + bst.floor(i % 20000, 0);
+        }
+        long allocated = bean.getThreadAllocatedBytes(tid) - before - overhead;
+        
+        System.out.println(allocated + " bytes allocated over " + ops + " ceiling/floor pairs (" + found + ")");
+        assert allocated < 1024 : "ordered queries should not allocate, but allocated " + allocated + " bytes over " + ops + " calls";
+        
+        System.out.println("Allocation tests passed");
+    }
+}
@@ -0,0 +1,271 @@
+package algorithms;
+
+public class BSTBatchTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting BST Batch Tests...");
+        
+        testRangeScan();
+        testBulkLoad();
+        testBatchOperations();
+        testBatchResumeBelowUnlinkedParent();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testRangeScan() {
+        System.out.println("Testing range scans...");
+        
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.RELAXED_BALANCE}}) {
+            BST bst = new BST(options);
+            for (int val = 0; val < 1000; val += 5) {
+                bst.insert(val);
+            }
+            for (int val = 0; val < 1000; val += 10) {
+                bst.remove(val);
+            }
+            bst.stopRebalancing();
+            bst.rebalancePass();
+            
+            // left: the multiples of 5 that are not multiples of 10
+            java.util.List<Integer> seen = new java.util.ArrayList<>();
+            bst.rangeScan(100, 200, seen::add);
+            assert seen.size() == 10 : "Should see 10 keys in [100, 200], saw " + seen;
+            for (int i = 0; i < seen.size(); i++) {
+                assert seen.get(i) == 105 + 10 * i : "Keys should come in order, saw " + seen;
+            }
+            assert bst.count(Integer.MIN_VALUE, Integer.MAX_VALUE) == 100 : "Should count all 100 keys";
+            assert bst.count(105, 105) == 1 : "A single-key range should count that key";
+            assert bst.count(106, 114) == 0 : "A range between keys should be empty";
+            assert bst.count(200, 100) == 0 : "An inverted range should be empty";
+        }
+        
+        // keys that stay in the tree are always reported, in order, while others come and go
+        BST bst = new BST();
+        for (int val = 0; val < 4000; val++) {
+            bst.insert(val);
+        }
+        Thread churn = new Thread(() -> {
+            java.util.Random random = new java.util.Random(1);
+            for (int i = 0; i < 200000; i++) {
+                int key = 2 * random.nextInt(2000) + 1;
+                if (!bst.remove(key)) {
+                    bst.insert(key);
+                }
+            }
+        });
+        churn.start();
+        while (churn.isAlive()) {
+            int[] last = {-1};
+            int[] pinned = {0};
+            bst.rangeScan(1000, 2999, key -> {
+                assert key > last[0] : "Keys should be strictly increasing, " + key + " after " + last[0];
+                last[0] = key;
+                if (key % 2 == 0) {
+                    pinned[0]++;
+                }
+            });
+            assert pinned[0] == 1000 : "Should see all 1000 even keys in range, saw " + pinned[0];
+        }
+        assert bst.checkBSTProperty() : "BST property should hold after the churn";
+        
+        System.out.println("Range scan tests passed");
+    }
+    
+    private static void testBulkLoad() {
+        System.out.println("Testing bulk loads...");
+        
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.STRIPED_COUNTERS}}) {
+            for (boolean parallel : new boolean[] {false, true}) {
+                BST bst = new BST(options);
+                int[] keys = new int[50000];
+                long expectedSum = 0;
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = 3 * i - 1000;
+                    expectedSum += keys[i];
+                }
+                if (parallel) {
+                    bst.bulkLoadParallel(keys);
+                } else {
+                    bst.bulkLoad(keys);
+                }
+                
+                assert bst.size() == keys.length : "Size should match the loaded keys";
+                assert bst.getKeysum() == expectedSum : "Keysum should match the loaded keys";
+                assert bst.checkBSTProperty() : "Loaded tree should satisfy the BST property";
+                assert bst.averageDepth() < 16 : "Loaded tree should be balanced, depth " + bst.averageDepth();
+                assert bst.contains(-1000) && bst.contains(148997) && !bst.contains(0) : "Membership should match the loaded keys";
+                
+                // the loaded tree takes ordinary updates
+                assert bst.remove(keys[keys.length / 2]) : "Should remove the loaded root";
+                assert !bst.insert(keys[0]) : "Should not insert a loaded key again";
+                assert bst.insert(0) : "Should insert a new key";
+                assert bst.size() == keys.length : "Size should be back to " + keys.length;
+                assert bst.checkBSTProperty() : "BST property should hold after updates";
+                
+                try {
+                    bst.bulkLoad(new int[] {1, 2});
+                    assert false : "Bulk load into a non-empty tree should fail";
+                } catch (IllegalStateException expected) {
+                }
+            }
+        }
+        
+        try {
+            new BST().bulkLoad(new int[] {1, 3, 2});
+            assert false : "Unsorted keys should be rejected";
+        } catch (IllegalArgumentException expected) {
+        }
+        
+        // a tree emptied by removals can be loaded again
+        BST bst = new BST(BST.Option.CAS_INSERT);
+        bst.insert(5);
+        bst.remove(5);
+        bst.bulkLoad(new int[] {1, 2, 3});
+        assert bst.size() == 3 && bst.contains(2) : "Should load into an emptied tree";
+        
+        System.out.println("Bulk load tests passed");
+    }
+    
+    private static void testBatchOperations() {
+        System.out.println("Testing batch operations...");
+        
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.STRIPED_COUNTERS}}) {
+            BST bst = new BST(options);
+            for (int val = 0; val < 1000; val += 3) {
+                bst.insert(val);
+            }
+            
+            int[] keys = new int[500];
+            long expectedSum = bst.getKeysum();
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = 2 * i;
+                if (keys[i] % 3 != 0) {
+                    expectedSum += keys[i];
+                }
+            }
+            long[] inserted = bst.insertAll(keys);
+            for (int i = 0; i < keys.length; i++) {
+                assert bit(inserted, i) == (keys[i] % 3 != 0) : "Insert of " + keys[i] + " should succeed only if it was missing";
+            }
+            assert bst.getKeysum() == expectedSum : "Keysum should count the batch";
+            assert bst.size() == 334 + 333 : "Size should count the batch, was " + bst.size();
+            
+            long[] found = bst.containsAll(new int[] {-1, 0, 1, 3, 3, 998, 999, 1000});
+            boolean[] expected = {false, true, false, true, true, true, true, false};
+            for (int i = 0; i < expected.length; i++) {
+                assert bit(found, i) == expected[i] : "containsAll should match contains at " + i;
+            }
+            
+            long[] removed = bst.removeAll(keys);
+            for (int i = 0; i < keys.length; i++) {
+                assert bit(removed, i) : "Remove of " + keys[i] + " should succeed";
+                assert !bst.contains(keys[i]) : "Should not contain " + keys[i] + " after removeAll";
+            }
+            assert bst.size() == 167 : "Only the odd multiples of 3 should be left, size " + bst.size();
+            assert bst.checkBSTProperty() : "BST property should hold after batches";
+        }
+        
+        try {
+            new BST().insertAll(new int[] {2, 1});
+            assert false : "Unsorted batches should be rejected";
+        } catch (IllegalArgumentException expected) {
+        }
+        
+        // batches racing single-key updates on the same keys
+        BST bst = new BST();
+        Thread churn = new Thread(() -> {
+            java.util.Random random = new java.util.Random(2);
+            for (int i = 0; i < 200000; i++) {
+                int key = random.nextInt(2000);
+                if (!bst.remove(key)) {
+                    bst.insert(key);
+                }
+            }
+        });
+        churn.start();
+        int[] evens = new int[1000];
+        for (int i = 0; i < evens.length; i++) {
+            evens[i] = 2 * i;
+        }
+        while (churn.isAlive()) {
+            bst.insertAll(evens);
+            bst.removeAll(evens);
+        }
+        try { churn.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        long[] left = bst.containsAll(evens);
+        for (int i = 0; i < evens.length; i++) {
+            assert bit(left, i) == bst.contains(evens[i]) : "containsAll should agree with contains";
+        }
+        long keysum = 0;
+        int size = 0;
+        for (int val = 0; val < 2000; val++) {
+            if (bst.contains(val)) {
+                keysum += val;
+                size++;
+            }
+        }
+        assert bst.size() == size && bst.getKeysum() == keysum : "Counters should match the keys left after the race";
+        assert bst.checkBSTProperty() : "BST property should hold after the race";
+        
+        System.out.println("Batch operation tests passed");
+    }
+    
+    private static void testBatchResumeBelowUnlinkedParent() {
+        System.out.println("Testing batch resume below an unlinked parent...");
+        
+        // the path a batch search for 30 leaves in 10 -> 20 -> 30
+        BST bst = new BST();
+        for (int val : new int[] {10, 20, 30}) {
+            bst.insert(val);
+        }
+        BST.Path path = new BST.Path();
+        path.generation = bst.generation.get();
+        for (BST.Node n = bst.root; n != null; n = n.key < 30 ? n.right : n.left) {
+            path.push(n, Long.MAX_VALUE);
+        }
+        assert path.size == 4 && path.seek(30, bst.generation.get()) == 3 : "The search should resume at 30";
+        
+        // another thread splices out 20 before the batch locks it as pred of 30
+        assert bst.remove(20) : "Should remove 20";
+        int i = path.seek(30, bst.generation.get());
+        assert i < 2 : "The search should not resume below the unlinked 20, resumed at " + path.nodes[i].key;
+        
+        // the same race, end to end: batch removes of leaves against removes of their parents
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.NODE_LOCKS}}) {
+            final BST tree = new BST(options);
+            final int rounds = 2000;
+            Thread parents = new Thread(() -> {
+                for (int r = 0; r < rounds; r++) {
+                    while (!tree.remove(4 * r + 2)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            Thread batches = new Thread(() -> {
+                for (int r = 0; r < rounds; r++) {
+                    int base = 4 * r;
+                    tree.insertAll(new int[] {base + 1, base + 2, base + 3});
+                    tree.removeAll(new int[] {base + 1, base + 3});
+                }
+            });
+            parents.start();
+            batches.start();
+            try {
+                batches.join(120000);
+                parents.join(120000);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            assert !batches.isAlive() && !parents.isAlive() : "Batch removes should terminate";
+            assert tree.size() == 0 && tree.getKeysum() == 0 : "Every key should be gone, size " + tree.size();
+            assert tree.checkBSTProperty() : "BST property should hold";
+        }
+        
+        System.out.println("Batch resume tests passed");
+    }
+    
+    private static boolean bit(long[] bitmap, int i) {
+        return (bitmap[i >>> 6] & (1L << i)) != 0;
+    }
+}
@@ -0,0 +1,89 @@
+package algorithms;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The Java Flight Recorder events of BST, for lining up stalls in the tree with the
+ * GC, safepoint and monitor events of the same recording. They are committed only
+ * while a recording has them enabled; otherwise creating one is optimized away and
+ * begin, end and commit do nothing.
+ *
+ * The thresholds below are defaults. A recording picks its own in a .jfc file or with
+ * Recording.enable(name).withThreshold(duration), e.g. to see every insert with 0 ms.
+ */
+final class BSTEvents {
+    private BSTEvents() {
+    }
+
+    static final String INSERT = "insert", REMOVE = "remove", CONTAINS = "contains";
+
+    @Name("algorithms.BSTSlowOperation")
+    @Label("BST Slow Operation")
+    @Category({"LazyBST"})
+    @Description("An insert, remove or contains that took longer than the threshold")
+    @Threshold("1 ms")
+    @StackTrace(false)
+    static final class SlowOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Key")
+        int key;
+
+        @Label("Result")
+        boolean result;
+    }
+
+    @Name("algorithms.BSTFindRestart")
+    @Label("BST Find Restart")
+    @Category({"LazyBST"})
+    @Description("A search met a node stamped by a relocation newer than itself and went back up the tree")
+    @StackTrace(false)
+    static final class FindRestart extends Event {
+        @Label("Key")
+        int key;
+
+        @Label("Restarts")
+        @Description("Restarts of this search so far, including this one")
+        int restarts;
+
+        @Label("Search Generation")
+        int searchGeneration;
+
+        @Label("Node Generation")
+        @Description("The stamp of the node that sent the search back")
+        int nodeGeneration;
+
+        @Label("From Root")
+        @Description("Whether the search started over at the root rather than at its last turn")
+        boolean fromRoot;
+    }
+
+    @Name("algorithms.BSTRelocateLockWait")
+    @Label("BST Relocate Lock Wait")
+    @Category({"LazyBST"})
+    @Description("A remove of a node with two children, holding its locks, waiting to lock the node to relocate and its parent")
+    @Threshold("20 us")
+    @StackTrace(false)
+    static final class RelocateLockWait extends Event {
+        @Label("Key")
+        int key;
+
+        @Label("Side")
+        @Description("left if the removed node was the left child of its parent (removeLeft), else right")
+        String side;
+
+        @Label("Attempts")
+        @Description("Tries of removeLeft/removeRight; every one after the first found a lock held or the nodes changed")
+        int attempts;
+
+        @Label("Node Locks")
+        boolean nodeLocks;
+    }
+}
@@ -0,0 +1,127 @@
+package algorithms;
+
+public class BSTInstrumentationTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting BST Instrumentation Tests...");
+        
+        testMetrics();
+        testFlightRecorderEvents();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    // counts only with -Dlazybst.metrics=true; otherwise checks that nothing is kept
+    private static void testMetrics() {
+        System.out.println("Testing metrics...");
+        
+        if (!BST.METRICS) {
+            assert BST.getMetrics() == null : "Metrics should be off without lazybst.metrics";
+            System.out.println("Metrics tests passed (off)");
+            return;
+        }
+        
+        BSTMetrics metrics = BST.getMetrics();
+        metrics.reset();
+        assert metrics.getFinds() == 0 && metrics.getLockHolds() == 0 : "Counts should reset";
+        
+        for (BST.Option[] mode : new BST.Option[][] {{}, {BST.Option.NODE_LOCKS}}) {
+            final BST bst = new BST(mode);
+            for (int val = 1; val <= 100; val++) {
+                bst.insert(val);
+            }
+            assert bst.contains(100) : "Key should be found";
+            assert bst.remove(50) : "Key should be removed";
+        }
+        // each tree: 100 inserts, a contains and a remove search once and take a lock for
+        // every insert and the remove
+        assert metrics.getFinds() == 2 * 102 : "Every search should count: " + metrics.getFinds();
+        assert metrics.getLockHolds() == 2 * 101 : "Every critical section should count: " + metrics.getLockHolds();
+        assert metrics.getMaxFindDepth() == 101 : "Sorted inserts make a path below the root: " + metrics.getMaxFindDepth();
+        assert metrics.getAverageFindDepth() > 1 : "Depth should be averaged";
+        assert metrics.getFindRestarts() == 0 && metrics.getValidateFailures() == 0 && metrics.getLockBusy() == 0
+                : "A single thread never loses a race";
+        try {
+            assert java.lang.management.ManagementFactory.getPlatformMBeanServer().isRegistered(
+                    new javax.management.ObjectName("algorithms:type=BSTMetrics")) : "Metrics should be an MBean";
+        } catch (javax.management.MalformedObjectNameException e) {
+            throw new RuntimeException(e);
+        }
+        
+        System.out.println("Metrics tests passed");
+    }
+    
+    private static void testFlightRecorderEvents() {
+        System.out.println("Testing flight recorder events...");
+        
+        java.util.List<jdk.jfr.consumer.RecordedEvent> events;
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()) {
+            recording.enable("algorithms.BSTSlowOperation").withThreshold(java.time.Duration.ZERO);
+            recording.enable("algorithms.BSTFindRestart");
+            recording.enable("algorithms.BSTRelocateLockWait").withThreshold(java.time.Duration.ZERO);
+            recording.start();
+            
+            BST bst = new BST();
+            for (int val : new int[] {50, 30, 70, 20, 40}) {
+                bst.insert(val);
+            }
+            bst.contains(40);
+            bst.remove(30); // two children: relocates 40 or 20
+            
+            // contention, for restarts and relocations that had to wait
+            final BST contended = new BST(BST.Option.NODE_LOCKS);
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    java.util.Random random = new java.util.Random(id);
+                    for (int i = 0; i < 20000; i++) {
+                        int val = 1 + random.nextInt(64);
+                        if (contended.insert(val)) {
+                            contended.remove(val);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            
+            recording.stop();
+            java.nio.file.Path file = java.nio.file.Files.createTempFile("bst", ".jfr");
+            recording.dump(file);
+            events = jdk.jfr.consumer.RecordingFile.readAllEvents(file);
+            java.nio.file.Files.delete(file);
+        } catch (java.io.IOException e) {
+            throw new RuntimeException(e);
+        }
+        
+        int inserts = 0, contains = 0, removes = 0, relocations = 0;
+        for (jdk.jfr.consumer.RecordedEvent e : events) {
+            String name = e.getEventType().getName();
+            if (name.equals("algorithms.BSTSlowOperation")) {
+                String op = e.getString("operation");
+                if (op.equals("insert")) inserts++;
+                if (op.equals("contains") && e.getInt("key") == 40) {
+                    assert e.getBoolean("result") : "contains(40) should have found it";
+                    contains++;
+                }
+                if (op.equals("remove")) removes++;
+            } else if (name.equals("algorithms.BSTFindRestart")) {
+                assert e.getInt("nodeGeneration") > e.getInt("searchGeneration") : "A restart should be caused by a newer stamp";
+                assert e.getInt("restarts") >= 1 : "Restarts should count this one";
+            } else if (name.equals("algorithms.BSTRelocateLockWait")) {
+                assert e.getInt("attempts") >= 1 : "Attempts should count the first";
+                assert e.getString("side").equals("left") || e.getString("side").equals("right") : "Side should be left or right";
+                relocations++;
+            }
+        }
+        assert inserts >= 5 : "With no threshold every insert should be recorded: " + inserts;
+        assert contains == 1 : "The contains should be recorded once: " + contains;
+        assert removes >= 1 : "The remove should be recorded";
+        assert relocations >= 1 : "Every remove through a lock should be recorded with no threshold";
+        
+        System.out.println("Flight recorder events tests passed");
+    }
+}
@@ -0,0 +1,188 @@
+package algorithms;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * A BST that maps each key to a long value, stored unboxed in the key's node. Keys
+ * are found, inserted, removed and scanned exactly as in BST, and the set operations
+ * still work: insert maps a new key to 0 and remove unmaps a key. Integer.MIN_VALUE
+ * is not a valid key.
+ *
+ * A value moves with its key when a two-child remove relocates the key into another
+ * node. Readers are not locked out while that happens, so every Entry has a version
+ * that the relocation makes odd for the duration of the move, and get reads the key
+ * and the value again if the version changed under it. Values of keys that stay put
+ * are only written under the node's lock, so a rotation never copies a stale value.
+ */
+public class BSTMap extends BST {
+    class Entry extends Node {
+        volatile long value;
+        volatile int version; // odd while a relocation is moving another key into this node
+
+        Entry(int key, long value) {
+            super(key);
+            this.value = value;
+        }
+    }
+
+    public BSTMap(Option... options) {
+        super(options);
+    }
+
+    @Override
+    Node newNode(int key, FindResult res) {
+        return new Entry(key, res == null ? 0 : res.value);
+    }
+
+    @Override
+    Node copyNode(Node n) {
+        return new Entry(n.key, ((Entry) n).value);
+    }
+
+    @Override
+    void moveKey(Node to, Node from) {
+        Entry e = (Entry) to;
+        int v = e.version;
+        e.version = v + 1;
+        e.key = from.key;
+        e.value = ((Entry) from).value;
+        e.version = v + 2;
+    }
+
+    private static void checkKey(int key) {
+        if (key == Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Integer.MIN_VALUE is reserved for the root");
+        }
+    }
+
+    /**
+     * The value key maps to, or defaultValue if it is not in the map.
+     */
+    public long get(final int key, final long defaultValue) {
+        FindResult res = scratch.get();
+        return lookup(key, res) ? res.value : defaultValue;
+    }
+
+    // whether key is in the map, and if it is, its value in res.value
+    private boolean lookup(final int key, final FindResult res) {
+        if (key == Integer.MIN_VALUE) {
+            return false;
+        }
+        while (true) {
+            Entry e = (Entry) find(key, null);
+            if (e == null) {
+                return false;
+            }
+            int v = e.version;
+            int currKey = e.key;
+            long value = e.value;
+            boolean marked = e.marked;
+            if ((v & 1) != 0 || e.version != v) {
+                continue;
+            }
+            if (currKey != key) {
+                return false;
+            }
+            if (!marked) {
+                res.value = value;
+                return true;
+            }
+            if (!e.moved) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Maps key to value if key is not in the map. Returns true if it was not.
+     */
+    public boolean putIfAbsent(final int key, final long value) {
+        checkKey(key);
+        scratch.get().value = value;
+        return super.insert(key);
+    }
+
+    /**
+     * Maps key to value. Returns true if key was not in the map before.
+     */
+    public boolean put(final int key, final long value) {
+        while (true) {
+            if (putIfAbsent(key, value)) {
+                return true;
+            }
+            Node n = find(key, null);
+            if (n == null) {
+                continue; // removed since putIfAbsent saw it
+            }
+            if (nodeLocks) {
+                lock(n);
+                try {
+                    if (replace(n, key, value)) {
+                        return false;
+                    }
+                } finally {
+                    unlock(n);
+                }
+                continue;
+            }
+            synchronized (n) {
+                if (replace(n, key, value)) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    // under n's lock
+    private static boolean replace(Node n, int key, long value) {
+        if (n.marked || n.key != key) {
+            return false;
+        }
+        ((Entry) n).value = value;
+        return true;
+    }
+
+    /**
+     * The value key maps to, after mapping it to f(key) if it was not in the map. As
+     * with ConcurrentSkipListMap, f is not called under any lock, and it may be
+     * called and its result dropped if another thread maps key first.
+     */
+    public long computeIfAbsent(final int key, final IntToLongFunction f) {
+        checkKey(key);
+        FindResult res = scratch.get();
+        while (true) {
+            if (lookup(key, res)) {
+                return res.value;
+            }
+            long value = f.applyAsLong(key);
+            if (putIfAbsent(key, value)) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Maps key to 0 if it is not in the map, like putIfAbsent(key, 0).
+     */
+    @Override
+    public boolean insert(final int key) {
+        return putIfAbsent(key, 0);
+    }
+
+    /**
+     * Maps the keys that are not in the map to 0, like insert.
+     */
+    @Override
+    public long[] insertAll(final int[] sortedKeys) {
+        if (sortedKeys.length > 0) {
+            checkKey(sortedKeys[0]);
+        }
+        scratch.get().value = 0;
+        return super.insertAll(sortedKeys);
+    }
+
+    @Override
+    public String getName() {
+        return "BSTMap";
+    }
+}
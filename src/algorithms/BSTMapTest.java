@@ -0,0 +1,108 @@
+package algorithms;
+
+public class BSTMapTest {
+
+    public static void main(String[] args) {
+        System.out.println("Starting BSTMap Tests...");
+
+        testBasicOperations();
+        testValuesFollowKeys();
+        testConcurrentReads();
+
+        System.out.println("All tests completed successfully!");
+    }
+
+    private static void testBasicOperations() {
+        System.out.println("Testing basic map operations...");
+        BSTMap map = new BSTMap();
+
+        assert map.get(5, -1) == -1 : "Empty map should return the default";
+        assert map.put(5, 50) : "First put should add the key";
+        assert !map.put(5, 55) : "Second put should replace the value";
+        assert map.get(5, -1) == 55 : "get should see the replaced value";
+        assert !map.putIfAbsent(5, 99) : "putIfAbsent should not replace";
+        assert map.get(5, -1) == 55 : "Value should be unchanged by putIfAbsent";
+        assert map.putIfAbsent(6, Long.MIN_VALUE) : "putIfAbsent should add a missing key";
+        assert map.get(6, 0) == Long.MIN_VALUE : "Any long should be a valid value";
+
+        int[] calls = {0};
+        assert map.computeIfAbsent(7, key -> { calls[0]++; return key * 10L; }) == 70 : "Should compute a missing value";
+        assert map.computeIfAbsent(7, key -> { calls[0]++; return 0; }) == 70 : "Should return the present value";
+        assert calls[0] == 1 : "Function should only run for a missing key";
+
+        assert map.insert(8) : "Set insert should add the key";
+        assert map.get(8, -1) == 0 : "Set insert should map to 0";
+        assert map.size() == 4 : "Size should be 4";
+        assert map.getKeysum() == 5 + 6 + 7 + 8 : "Keysum should match the keys";
+
+        assert map.remove(5) : "Should remove 5";
+        assert map.get(5, -1) == -1 : "Removed key should return the default";
+        assert map.get(Integer.MIN_VALUE, -1) == -1 : "The root sentinel is not a key";
+        try {
+            map.put(Integer.MIN_VALUE, 1);
+            assert false : "Integer.MIN_VALUE should be rejected";
+        } catch (IllegalArgumentException expected) {
+        }
+
+        System.out.println("Basic map operations tests passed");
+    }
+
+    private static void testValuesFollowKeys() {
+        System.out.println("Testing values across relocations and rotations...");
+
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.RELAXED_BALANCE}}) {
+            BSTMap map = new BSTMap(options);
+            java.util.Random random = new java.util.Random(3);
+            for (int i = 0; i < 5000; i++) {
+                int key = random.nextInt(10000);
+                map.put(key, key * 3L);
+            }
+            // removing inner nodes relocates their successors and predecessors
+            for (int key = 0; key < 10000; key += 4) {
+                map.remove(key);
+            }
+            map.stopRebalancing();
+            map.rebalancePass();
+
+            for (int key = 0; key < 10000; key++) {
+                long value = map.get(key, -1);
+                assert value == (map.contains(key) ? key * 3L : -1) : "Value of " + key + " should follow it, was " + value;
+            }
+            assert map.checkBSTProperty() : "BST property should hold";
+        }
+
+        BSTMap map = new BSTMap();
+        map.bulkLoad(new int[] {1, 2, 3});
+        assert map.get(2, -1) == 0 : "Bulk loaded keys should map to 0";
+
+        System.out.println("Value placement tests passed");
+    }
+
+    private static void testConcurrentReads() {
+        System.out.println("Testing reads during concurrent relocations...");
+        BSTMap map = new BSTMap();
+        for (int key = 1; key <= 4000; key++) {
+            map.put(key, -key);
+        }
+
+        Thread churn = new Thread(() -> {
+            java.util.Random random = new java.util.Random(4);
+            for (int i = 0; i < 300000; i++) {
+                int key = 1 + random.nextInt(4000);
+                if (!map.remove(key)) {
+                    map.put(key, -key);
+                }
+            }
+        });
+        churn.start();
+        java.util.Random random = new java.util.Random(5);
+        while (churn.isAlive()) {
+            int key = 1 + random.nextInt(4000);
+            long value = map.get(key, 0);
+            assert value == 0 || value == -key : "Key " + key + " should never read another key's value " + value;
+        }
+        assert map.checkBSTProperty() : "BST property should hold after the churn";
+
+        System.out.println("Concurrent read tests passed");
+    }
+}
@@ -0,0 +1,174 @@
+package algorithms;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * What BST does under contention, counted when the JVM runs with
+ * -Dlazybst.metrics=true (see BST.METRICS) and registered with the platform MBean
+ * server as algorithms:type=BSTMetrics. The counts cover every BST in the JVM.
+ *
+ * The cells are striped by thread as in StripedCounters, and shared with it: a thread
+ * counts into the padded cell its id hashes to, under that cell's seqlock, so counting
+ * only contends with the few threads of the same cell. The getters add up the cells
+ * without locking them, so while updates are running a sum may be a little behind.
+ * reset locks each cell while clearing it.
+ */
+public final class BSTMetrics implements BSTMetricsMBean {
+    static final class Cell extends StripedCounters.Stripe {
+        long finds, depthSum, maxDepth;
+        long findRestarts;
+        long validateFailures;
+        long lockBusy;
+        long lockHolds, lockHoldNanos, maxLockHoldNanos;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        void clear() {
+            finds = depthSum = maxDepth = findRestarts = validateFailures = lockBusy = 0;
+            lockHolds = lockHoldNanos = maxLockHoldNanos = 0;
+        }
+    }
+
+    private final Cell[] cells = new Cell[StripedCounters.STRIPES];
+
+    BSTMetrics() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Cell();
+        }
+    }
+
+    static BSTMetrics registered() {
+        BSTMetrics metrics = new BSTMetrics();
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName("algorithms:type=BSTMetrics"));
+        } catch (JMException e) {
+            // still counted, just not visible over JMX
+            System.err.println("BSTMetrics not registered: " + e);
+        }
+        return metrics;
+    }
+
+    // a search went through depth nodes and restarted restarts times
+    void find(int depth, int restarts) {
+        Cell c = cells[StripedCounters.stripe()];
+        long v = c.lock();
+        c.finds++;
+        c.depthSum += depth;
+        if (depth > c.maxDepth) {
+            c.maxDepth = depth;
+        }
+        c.findRestarts += restarts;
+        c.unlock(v);
+    }
+
+    void validateFailed() {
+        Cell c = cells[StripedCounters.stripe()];
+        long v = c.lock();
+        c.validateFailures++;
+        c.unlock(v);
+    }
+
+    void lockBusy() {
+        Cell c = cells[StripedCounters.stripe()];
+        long v = c.lock();
+        c.lockBusy++;
+        c.unlock(v);
+    }
+
+    // a lock acquired at lockedAt (System.nanoTime) is about to be released
+    void lockHeld(long lockedAt) {
+        long nanos = System.nanoTime() - lockedAt;
+        Cell c = cells[StripedCounters.stripe()];
+        long v = c.lock();
+        c.lockHolds++;
+        c.lockHoldNanos += nanos;
+        if (nanos > c.maxLockHoldNanos) {
+            c.maxLockHoldNanos = nanos;
+        }
+        c.unlock(v);
+    }
+
+    public long getFinds() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += c.finds;
+        }
+        return result;
+    }
+
+    public double getAverageFindDepth() {
+        long finds = 0, depth = 0;
+        for (Cell c : cells) {
+            finds += c.finds;
+            depth += c.depthSum;
+        }
+        return finds == 0 ? 0 : depth / (double) finds;
+    }
+
+    public long getMaxFindDepth() {
+        long result = 0;
+        for (Cell c : cells) {
+            result = Math.max(result, c.maxDepth);
+        }
+        return result;
+    }
+
+    public long getFindRestarts() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += c.findRestarts;
+        }
+        return result;
+    }
+
+    public long getValidateFailures() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += c.validateFailures;
+        }
+        return result;
+    }
+
+    public long getLockBusy() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += c.lockBusy;
+        }
+        return result;
+    }
+
+    public long getLockHolds() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += c.lockHolds;
+        }
+        return result;
+    }
+
+    public double getAverageLockHoldNanos() {
+        long holds = 0, nanos = 0;
+        for (Cell c : cells) {
+            holds += c.lockHolds;
+            nanos += c.lockHoldNanos;
+        }
+        return holds == 0 ? 0 : nanos / (double) holds;
+    }
+
+    public long getMaxLockHoldNanos() {
+        long result = 0;
+        for (Cell c : cells) {
+            result = Math.max(result, c.maxLockHoldNanos);
+        }
+        return result;
+    }
+
+    public void reset() {
+        for (Cell c : cells) {
+            long v = c.lock();
+            c.clear();
+            c.unlock(v);
+        }
+    }
+}
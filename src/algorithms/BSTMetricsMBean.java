@@ -0,0 +1,23 @@
+package algorithms;
+
+/**
+ * The JMX view of BSTMetrics.
+ */
+public interface BSTMetricsMBean {
+    /** searches, including those of updates and batches */
+    long getFinds();
+    /** nodes a search went through, on average */
+    double getAverageFindDepth();
+    long getMaxFindDepth();
+    /** searches that met a newer generation stamp and started over */
+    long getFindRestarts();
+    /** validate and validateSlot calls that found the nodes changed since the search */
+    long getValidateFailures();
+    /** NODE_LOCKS try-locks that found the lock held */
+    long getLockBusy();
+    /** critical sections run under node locks, and how long they held them */
+    long getLockHolds();
+    double getAverageLockHoldNanos();
+    long getMaxLockHoldNanos();
+    void reset();
+}
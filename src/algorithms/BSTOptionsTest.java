@@ -0,0 +1,301 @@
+package algorithms;
+
+public class BSTOptionsTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting BST Option Tests...");
+        
+        testCasInsert();
+        testStripedCounters();
+        testRelaxedBalance();
+        testNodeLocks();
+        testContentionManager();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testCasInsert() {
+        System.out.println("Testing CAS insert mode...");
+        BST bst = new BST(BST.Option.CAS_INSERT);
+        
+        int[] values = {10, 5, 15, 3, 7, 12, 18, 1, 4, 6, 8, 11, 13, 16, 19};
+        for (int val : values) {
+            assert bst.insert(val) : "Should successfully insert " + val;
+            assert !bst.insert(val) : "Should not insert duplicate " + val;
+        }
+        assert bst.size() == 15 : "Size should be 15";
+        
+        // two-child, one-child and leaf removals close the slots of the removed nodes
+        assert bst.remove(10) : "Should remove root 10";
+        assert bst.remove(3) : "Should remove node 3";
+        assert bst.remove(19) : "Should remove leaf 19";
+        assert bst.checkBSTProperty() : "BST property should hold";
+        
+        // re-inserting next to removed nodes must attach to live nodes only
+        assert bst.insert(10) : "Should re-insert 10";
+        assert bst.insert(3) : "Should re-insert 3";
+        assert bst.insert(19) : "Should re-insert 19";
+        for (int val : values) {
+            assert bst.contains(val) : "Should contain " + val;
+        }
+        assert bst.size() == 15 : "Size should be 15";
+        assert bst.checkBSTProperty() : "BST property should hold";
+        
+        System.out.println("CAS insert tests passed");
+    }
+    
+    private static void testStripedCounters() {
+        System.out.println("Testing striped size and keysum counters...");
+        
+        for (BST.Option option : new BST.Option[] {BST.Option.STRIPED_COUNTERS, BST.Option.SNAPSHOT_COUNTERS}) {
+            final BST bst = new BST(option);
+            
+            // more threads than cells, so some of them share a cell
+            Thread[] threads = new Thread[4 * StripedCounters.STRIPES];
+            for (int t = 0; t < threads.length; t++) {
+                final int base = t * 1000;
+                threads[t] = new Thread(() -> {
+                    for (int val = base + 1; val <= base + 500; val++) {
+                        bst.insert(val);
+                    }
+                    for (int val = base + 1; val <= base + 100; val++) {
+                        bst.remove(val);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            
+            long expectedSum = 0;
+            for (int t = 0; t < threads.length; t++) {
+                for (int val = t * 1000 + 101; val <= t * 1000 + 500; val++) expectedSum += val;
+            }
+            assert bst.size() == 400 * threads.length : option + ": size should be " + 400 * threads.length;
+            assert bst.getKeysum() == expectedSum : option + ": keysum should match expected";
+            
+            // the calling thread counts into a cell of the same table
+            assert !bst.insert(101) : option + ": should not insert duplicate 101";
+            assert bst.remove(101) : option + ": should remove 101";
+            assert bst.size() == 400 * threads.length - 1 : option + ": size should drop by 1";
+            assert bst.getKeysum() == expectedSum - 101 : option + ": keysum should drop by 101";
+        }
+        
+        System.out.println("Striped counter tests passed");
+    }
+    
+    private static void testRelaxedBalance() {
+        System.out.println("Testing relaxed balance...");
+        
+        for (BST.Option[] options : new BST.Option[][] {{BST.Option.RELAXED_BALANCE}, {BST.Option.RELAXED_BALANCE, BST.Option.CAS_INSERT}}) {
+            BST bst = new BST(options);
+            
+            // sorted inserts build a list; one pass on a quiet tree must balance it
+            for (int val = 1; val <= 5000; val++) {
+                assert bst.insert(val) : "Should insert " + val;
+            }
+            bst.stopRebalancing();
+            bst.rebalancePass();
+            assert bst.averageDepth() < 14 : "Average depth should be logarithmic, was " + bst.averageDepth();
+            assert bst.checkBSTProperty() : "BST property should hold after rotations";
+            assert bst.size() == 5000 : "Size should be 5000";
+            for (int val = 1; val <= 5000; val++) {
+                assert bst.contains(val) : "Should still contain " + val;
+            }
+            
+            // updates keep working on the rotated tree
+            for (int val = 1; val <= 5000; val += 2) {
+                assert bst.remove(val) : "Should remove " + val;
+            }
+            assert !bst.contains(1) : "Should not contain 1";
+            assert bst.contains(2) : "Should contain 2";
+            assert bst.insert(1) : "Should insert 1 again";
+            assert bst.size() == 2501 : "Size should be 2501";
+            assert bst.checkBSTProperty() : "BST property should hold after updates";
+        }
+        
+        // the background helper gets there on its own
+        BST bst = new BST(BST.Option.RELAXED_BALANCE);
+        for (int val = 1; val <= 2000; val++) {
+            bst.insert(val);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bst.averageDepth() >= 14 && System.currentTimeMillis() < deadline) {
+            try { Thread.sleep(10); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        }
+        assert bst.averageDepth() < 14 : "Rebalancer should have balanced the tree, depth " + bst.averageDepth();
+        bst.stopRebalancing();
+        
+        // rotations under concurrent updates: each thread owns the keys congruent to its
+        // index and knows exactly which of them are in the tree, so every result it gets
+        // back can be checked, not just the shape of the tree
+        for (BST.Option[] options : new BST.Option[][] {{BST.Option.RELAXED_BALANCE}, {BST.Option.RELAXED_BALANCE, BST.Option.NODE_LOCKS}}) {
+            final BST tree = new BST(options);
+            final int threads = 4, range = 2048, ops = 200000;
+            final java.util.concurrent.atomic.AtomicReference<String> failure = new java.util.concurrent.atomic.AtomicReference<>();
+            Thread[] ts = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                final int id = t;
+                ts[t] = new Thread(() -> {
+                    java.util.Random rng = new java.util.Random(id);
+                    boolean[] present = new boolean[range];
+                    for (int i = 0; i < ops && failure.get() == null; i++) {
+                        // a window sliding up the keys keeps the rebalancer rotating
+                        int slot = (i / 16 + rng.nextInt(64)) % range;
+                        int key = slot * threads + id + 1;
+                        int op = rng.nextInt(3);
+                        boolean result = op == 0 ? tree.insert(key) : op == 1 ? tree.remove(key) : tree.contains(key);
+                        boolean expected = op == 0 ? !present[slot] : present[slot];
+                        if (result != expected) {
+                            failure.compareAndSet(null, (op == 0 ? "insert(" : op == 1 ? "remove(" : "contains(") + key + ") returned " + result);
+                        }
+                        if (op != 2) {
+                            present[slot] = op == 0;
+                        }
+                    }
+                });
+                ts[t].start();
+            }
+            for (Thread t : ts) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            tree.stopRebalancing();
+            assert failure.get() == null : java.util.Arrays.toString(options) + ": " + failure.get();
+            assert tree.size() == tree.depthTotals()[0] : "Size should match the keys in the tree, " + tree.size() + " vs " + tree.depthTotals()[0];
+            assert tree.checkBSTProperty() : "BST property should hold after concurrent rotations";
+        }
+        
+        System.out.println("Relaxed balance tests passed");
+    }
+    
+    private static void testNodeLocks() {
+        System.out.println("Testing node lock words...");
+        
+        BST.Option[][] modes = {
+            {BST.Option.NODE_LOCKS},
+            {BST.Option.NODE_LOCKS, BST.Option.CAS_INSERT},
+            {BST.Option.NODE_LOCKS, BST.Option.RELAXED_BALANCE, BST.Option.STRIPED_COUNTERS}
+        };
+        for (BST.Option[] options : modes) {
+            final BST bst = new BST(options);
+            
+            // threads share the tree but own their keys, so the result is known
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    java.util.Random random = new java.util.Random(id);
+                    for (int i = 0; i < 100000; i++) {
+                        int val = 1 + threads.length * random.nextInt(2000) + id;
+                        if (!bst.remove(val)) {
+                            bst.insert(val);
+                        }
+                    }
+                    // leave exactly the keys 1 (mod 4) behind the other threads' churn
+                    for (int val = 1 + id; val <= 8000; val += threads.length) {
+                        if (val % threads.length == 1) {
+                            bst.insert(val);
+                        } else {
+                            bst.remove(val);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            bst.stopRebalancing();
+            
+            long expectedSum = 0;
+            for (int val = 1; val <= 8000; val++) {
+                assert bst.contains(val) == (val % 4 == 1) : "Wrong membership of " + val;
+                if (val % 4 == 1) expectedSum += val;
+            }
+            assert bst.size() == 2000 : "Size should be 2000, was " + bst.size();
+            assert bst.getKeysum() == expectedSum : "Keysum should match expected";
+            assert bst.checkBSTProperty() : "BST property should hold";
+            
+            // every lock is free again
+            bst.rebalancePass();
+            assert bst.remove(1) && bst.insert(1) : "Should update after the churn";
+        }
+        
+        BSTMap map = new BSTMap(BST.Option.NODE_LOCKS);
+        assert map.put(3, 30) && !map.put(3, 31) : "Map put should add, then replace";
+        assert map.get(3, -1) == 31 : "Map should see the replaced value";
+        
+        BST bst = new BST(BST.Option.NODE_LOCKS);
+        bst.bulkLoad(new int[] {1, 2, 3});
+        assert bst.insert(4) && bst.contains(2) : "Should update a bulk loaded tree";
+        
+        System.out.println("Node lock tests passed");
+    }
+    
+    private static void testContentionManager() {
+        System.out.println("Testing contention management...");
+        
+        // a single thread never loses a race
+        BST quiet = new BST(BST.Option.BACKOFF);
+        for (int val = 1; val <= 1000; val++) {
+            quiet.insert(val * 7 % 1000);
+            quiet.remove(val * 3 % 1000);
+        }
+        for (ContentionManager.Site site : ContentionManager.Site.values()) {
+            assert quiet.getContentionManager().retries(site) == 0 : site + " should not have retried";
+        }
+        
+        ContentionManager tuned = ContentionManager.exponential()
+                .setSpins(ContentionManager.Site.FIND_RESTART, 1, 8)
+                .setSpins(ContentionManager.Site.RELOCATE_RETRY, 0, 0);
+        BST.Option[][] modes = {{BST.Option.BACKOFF}, {BST.Option.BACKOFF, BST.Option.NODE_LOCKS, BST.Option.CAS_INSERT}, {}};
+        for (int m = 0; m <= modes.length; m++) {
+            final BST bst = m < modes.length ? new BST(modes[m]) : new BST(tuned, BST.Option.NODE_LOCKS);
+            
+            // all threads fight over a few keys
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    java.util.Random random = new java.util.Random(id);
+                    for (int i = 0; i < 50000; i++) {
+                        int val = 1 + random.nextInt(64);
+                        if (bst.insert(val)) {
+                            bst.remove(val);
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            
+            long expectedSum = 0;
+            int expectedSize = 0;
+            for (int val = 1; val <= 64; val++) {
+                if (bst.contains(val)) {
+                    expectedSum += val;
+                    expectedSize++;
+                }
+            }
+            assert bst.size() == expectedSize : "Size should match the keys present";
+            assert bst.getKeysum() == expectedSum : "Keysum should match the keys present";
+            assert bst.checkBSTProperty() : "BST property should hold";
+            
+            String summary = bst.getContentionManager().retriesSummary();
+            assert summary.contains("find_restart=") && summary.contains("relocate_retry=") : "Summary should list every site: " + summary;
+            bst.getContentionManager().resetRetries();
+            assert bst.getContentionManager().retries(ContentionManager.Site.REMOVE_RETRY) == 0 : "Counts should reset";
+        }
+        
+        try {
+            ContentionManager.immediate().setSpins(ContentionManager.Site.INSERT_RETRY, 8, 4);
+            assert false : "min above max should be rejected";
+        } catch (IllegalArgumentException expected) {
+        }
+        
+        System.out.println("Contention management tests passed");
+    }
+}
@@ -0,0 +1,196 @@
+package algorithms;
+
+public class BSTOrderedTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting BST Ordered Query Tests...");
+        
+        testOrderedQueries();
+        testPoll();
+        testOrderStatistics();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testOrderedQueries() {
+        System.out.println("Testing ordered queries...");
+        
+        BST empty = new BST();
+        assert empty.first(-1) == -1 && empty.last(-1) == -1 : "An empty tree has no first or last key";
+        assert empty.ceiling(5, -1) == -1 && empty.floor(5, -1) == -1 : "An empty tree has no neighbours";
+        
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.RELAXED_BALANCE}}) {
+            BST bst = new BST(options);
+            for (int val = 10; val <= 1000; val += 10) {
+                bst.insert(val);
+            }
+            bst.remove(500);
+            bst.stopRebalancing();
+            bst.rebalancePass();
+            
+            assert bst.first(-1) == 10 : "First key should be 10";
+            assert bst.last(-1) == 1000 : "Last key should be 1000";
+            assert bst.ceiling(20, -1) == 20 && bst.floor(20, -1) == 20 : "A present key is its own ceiling and floor";
+            assert bst.higher(20, -1) == 30 && bst.lower(20, -1) == 10 : "higher and lower should skip the key itself";
+            assert bst.ceiling(21, -1) == 30 && bst.floor(29, -1) == 20 : "Absent keys should round to their neighbours";
+            assert bst.ceiling(495, -1) == 510 && bst.floor(505, -1) == 490 : "A removed key should be skipped";
+            assert bst.ceiling(1001, -1) == -1 && bst.floor(9, -1) == -1 : "There is nothing past either end";
+            assert bst.lower(Integer.MIN_VALUE, -1) == -1 && bst.higher(Integer.MAX_VALUE, -1) == -1 : "Extreme keys have no neighbours past them";
+        }
+        
+        // neighbours of keys that never leave are always found while keys between them come and go
+        BST bst = new BST();
+        for (int val = 0; val < 4000; val++) {
+            bst.insert(val);
+        }
+        Thread churn = new Thread(() -> {
+            java.util.Random random = new java.util.Random(6);
+            for (int i = 0; i < 200000; i++) {
+                int key = random.nextInt(4000);
+                if (key % 4 != 0 && !bst.remove(key)) {
+                    bst.insert(key);
+                }
+            }
+        });
+        churn.start();
+        java.util.Random random = new java.util.Random(7);
+        while (churn.isAlive()) {
+            int key = 4 + random.nextInt(3990);
+            int ceiling = bst.ceiling(key, -1);
+            int floor = bst.floor(key, -1);
+            assert ceiling >= key && ceiling <= (key + 3) / 4 * 4 : "ceiling(" + key + ") should be at most the next multiple of 4, was " + ceiling;
+            assert floor <= key && floor >= key / 4 * 4 : "floor(" + key + ") should be at least the last multiple of 4, was " + floor;
+        }
+        
+        System.out.println("Ordered query tests passed");
+    }
+    
+    private static void testPoll() {
+        System.out.println("Testing pollFirst and pollLast...");
+        
+        BST bst = new BST();
+        assert bst.pollFirst(-1) == -1 && bst.pollLast(-1) == -1 : "Polling an empty tree should return the default";
+        for (int val : new int[] {50, 20, 80, 10, 30, 70, 90}) {
+            bst.insert(val);
+        }
+        assert bst.pollFirst(-1) == 10 : "pollFirst should take the smallest key";
+        assert bst.pollLast(-1) == 90 : "pollLast should take the largest key";
+        assert bst.pollFirst(-1) == 20 : "pollFirst should take the next smallest key";
+        assert bst.size() == 4 && !bst.contains(10) && !bst.contains(90) : "Polled keys should be gone";
+        
+        // relaxed polls stay among the spread smallest keys
+        bst = new BST();
+        for (int val = 1; val <= 100; val++) {
+            bst.insert(val);
+        }
+        for (int i = 1; i <= 50; i++) {
+            int key = bst.pollFirst(4, -1);
+            assert key >= 1 && key <= i + 3 : "Poll " + i + " should be one of the 4 smallest keys, was " + key;
+        }
+        try {
+            bst.pollFirst(0, -1);
+            assert false : "A spread below 1 should be rejected";
+        } catch (IllegalArgumentException expected) {
+        }
+        
+        // concurrent consumers get every key exactly once, and strict ones each in order
+        for (BST.Option[] options : new BST.Option[][] {{}, {BST.Option.CAS_INSERT}, {BST.Option.NODE_LOCKS}}) {
+            for (int spread : new int[] {1, 8}) {
+                BST queue = new BST(options);
+                int n = 20000;
+                for (int val = 1; val <= n; val++) {
+                    queue.insert(val);
+                }
+                java.util.concurrent.atomic.AtomicIntegerArray seen = new java.util.concurrent.atomic.AtomicIntegerArray(n + 1);
+                java.util.concurrent.atomic.AtomicBoolean ordered = new java.util.concurrent.atomic.AtomicBoolean(true);
+                Thread[] consumers = new Thread[4];
+                for (int t = 0; t < consumers.length; t++) {
+                    consumers[t] = new Thread(() -> {
+                        int key, last = 0;
+                        while ((key = queue.pollFirst(spread, -1)) != -1) {
+                            seen.incrementAndGet(key);
+                            if (key < last) {
+                                ordered.set(false);
+                            }
+                            last = key;
+                        }
+                    });
+                    consumers[t].start();
+                }
+                for (Thread t : consumers) {
+                    try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+                }
+                for (int val = 1; val <= n; val++) {
+                    assert seen.get(val) == 1 : "Key " + val + " should be polled exactly once, was " + seen.get(val);
+                }
+                assert queue.size() == 0 && queue.getKeysum() == 0 : "Queue should be empty";
+                assert spread > 1 || ordered.get() : "A strict consumer should get its keys in increasing order";
+            }
+        }
+        
+        System.out.println("Poll tests passed");
+    }
+    
+    private static void testOrderStatistics() {
+        System.out.println("Testing rank and select...");
+        
+        for (BST.Option[] options : new BST.Option[][] {{BST.Option.ORDER_STATISTICS}, {BST.Option.ORDER_STATISTICS, BST.Option.RELAXED_BALANCE}}) {
+            BST bst = new BST(options);
+            bst.stopRebalancing();
+            assert bst.select(0, -1) == -1 : "An empty tree has nothing to select";
+            
+            // sorted inserts, so that RELAXED_BALANCE has to rotate
+            for (int val = 1; val <= 2000; val++) {
+                bst.insert(2 * val);
+            }
+            for (int val = 1; val <= 2000; val += 3) {
+                bst.remove(2 * val);
+            }
+            bst.rebalancePass();
+            
+            int[] keys = new int[bst.size()];
+            int n = 0;
+            for (int val = 1; val <= 2000; val++) {
+                if (bst.contains(2 * val)) {
+                    keys[n++] = 2 * val;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                assert bst.rank(keys[i]) == i : "rank(" + keys[i] + ") should be " + i + ", was " + bst.rank(keys[i]);
+                assert bst.rank(keys[i] + 1) == i + 1 : "rank of an absent key should count the keys below it";
+                assert bst.select(i, -1) == keys[i] : "select(" + i + ") should be " + keys[i] + ", was " + bst.select(i, -1);
+            }
+            assert bst.rank(Integer.MIN_VALUE) == 0 && bst.rank(Integer.MAX_VALUE) == n : "rank should span 0 to size";
+            assert bst.select(n, -1) == -1 && bst.select(-1, -1) == -1 : "select out of range should return the default";
+            
+            // counts lag behind updates until the next pass, by at most the number of updates
+            for (int val = 1; val <= 10; val++) {
+                bst.insert(2 * val - 1);
+            }
+            int lagging = bst.rank(1000);
+            assert lagging >= 499 - 167 && lagging <= 499 - 167 + 10 : "Stale rank should be within the updates since the pass, was " + lagging;
+            bst.rebalancePass();
+            assert bst.rank(1000) == 499 - 167 + 10 : "rank should be exact after a pass, was " + bst.rank(1000);
+        }
+        
+        try {
+            new BST().rank(5);
+            assert false : "rank without ORDER_STATISTICS should fail";
+        } catch (IllegalStateException expected) {
+        }
+        
+        // the helper thread catches up on its own
+        BST bst = new BST(BST.Option.ORDER_STATISTICS);
+        for (int val = 1; val <= 1000; val++) {
+            bst.insert(val);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (bst.rank(501) != 500 && System.currentTimeMillis() < deadline) {
+            try { Thread.sleep(10); } catch (InterruptedException e) { throw new RuntimeException(e); }
+        }
+        assert bst.rank(501) == 500 : "Helper should have brought the counts up to date";
+        bst.stopRebalancing();
+        
+        System.out.println("Rank and select tests passed");
+    }
+}
@@ -0,0 +1,81 @@
+package algorithms;
+
+import main.BSTInterface;
+
+public class BaselineSetsTest {
+
+    public static void main(String[] args) {
+        System.out.println("Starting baseline set Tests...");
+
+        testBasicOperations();
+        testOrderedQueries();
+        testConcurrentKeysum();
+
+        System.out.println("All tests completed successfully!");
+    }
+
+    private static BSTInterface[] baselines() {
+        return new BSTInterface[] {new SkipListSet(), new LockedTreeSet()};
+    }
+
+    private static void testBasicOperations() {
+        System.out.println("Testing basic operations...");
+
+        for (BSTInterface set : baselines()) {
+            assert set.size() == 0 && set.getKeysum() == 0 : set.getName() + ": should start empty";
+            assert set.insert(5) && set.insert(-3) && !set.insert(5) : set.getName() + ": should insert each key once";
+            assert set.contains(5) && set.contains(-3) && !set.contains(4) : set.getName() + ": should find exactly its keys";
+            assert set.remove(5) && !set.remove(5) : set.getName() + ": should remove each key once";
+            assert set.size() == 1 && set.getKeysum() == -3 : set.getName() + ": size and keysum should follow updates";
+        }
+
+        System.out.println("Basic operation tests passed");
+    }
+
+    private static void testOrderedQueries() {
+        System.out.println("Testing ordered queries...");
+
+        for (BSTInterface set : baselines()) {
+            for (int key = 10; key <= 50; key += 10) {
+                set.insert(key);
+            }
+            assert set.ceiling(20, -1) == 20 && set.higher(20, -1) == 30 : set.getName() + ": ceiling/higher";
+            assert set.floor(25, -1) == 20 && set.lower(20, -1) == 10 : set.getName() + ": floor/lower";
+            assert set.higher(50, -1) == -1 && set.lower(10, -1) == -1 : set.getName() + ": no key past the ends";
+            assert set.first(-1) == 10 && set.last(-1) == 50 : set.getName() + ": first/last";
+        }
+
+        System.out.println("Ordered query tests passed");
+    }
+
+    private static void testConcurrentKeysum() {
+        System.out.println("Testing concurrent updates...");
+
+        for (BSTInterface set : baselines()) {
+            // each thread owns the keys k with k % 4 == t, so its net keysum is known
+            long[] sums = new long[4];
+            Thread[] threads = new Thread[4];
+            for (int t = 0; t < threads.length; t++) {
+                final int id = t;
+                threads[t] = new Thread(() -> {
+                    java.util.Random random = new java.util.Random(id);
+                    for (int i = 0; i < 20000; i++) {
+                        int key = 4 * random.nextInt(500) + id;
+                        if (set.insert(key)) {
+                            sums[id] += key;
+                        } else if (set.remove(key)) {
+                            sums[id] -= key;
+                        }
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+            }
+            assert set.getKeysum() == sums[0] + sums[1] + sums[2] + sums[3] : set.getName() + ": keysum should match the threads' updates";
+        }
+
+        System.out.println("Concurrent update tests passed");
+    }
+}
@@ -0,0 +1,133 @@
+package algorithms;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides how long a BST waits before retrying an operation that lost a race, and
+ * counts how often that happens at each place where it can.
+ *
+ * The wait before the n-th retry in a row at a site is a number of Thread.onSpinWait
+ * calls that starts at the site's minimum and doubles with every retry up to its
+ * maximum, optionally drawn at random below that bound so that threads that collided
+ * once do not collide again. After yieldAfter retries in a row the thread yields
+ * instead, in case whoever it is waiting for is not running, unless yieldAfter is
+ * Integer.MAX_VALUE. A site whose maximum is 0 retries at once.
+ *
+ * The counters are only touched on a retry, never on an operation that succeeds the
+ * first time.
+ */
+public final class ContentionManager {
+    /**
+     * The places in BST that retry.
+     */
+    public enum Site {
+        /** find met a newer generation stamp and started over, or a search ended on a moved node */
+        FIND_RESTART,
+        /** an insert found its slot taken, its parent marked or changed, after searching */
+        INSERT_RETRY,
+        /** a remove failed validation or (NODE_LOCKS) found a lock held, and searches again */
+        REMOVE_RETRY,
+        /** a two-child remove, holding its locks, failed to lock or validate the node to relocate */
+        RELOCATE_RETRY
+    }
+
+    private static final Site[] SITES = Site.values();
+
+    private final int[] minSpins = new int[SITES.length];
+    private final int[] maxSpins = new int[SITES.length];
+    private final LongAdder[] retries = new LongAdder[SITES.length];
+    private final boolean randomized;
+    private final int yieldAfter;
+
+    /**
+     * A manager that spins for no time anywhere until it is tuned with setSpins.
+     */
+    public ContentionManager(boolean randomized, int yieldAfter) {
+        this.randomized = randomized;
+        this.yieldAfter = yieldAfter;
+        for (int i = 0; i < SITES.length; i++) {
+            retries[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Retries at once everywhere and never yields, as BST did before it had a
+     * contention manager.
+     */
+    public static ContentionManager immediate() {
+        return new ContentionManager(false, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Randomized exponential backoff, tuned per site. A restarted search already
+     * spent a whole search waiting, and a relocation holds two locks that others may
+     * be queueing on, so those two wait little; searching again for an insert or a
+     * remove is what keeps threads off each other's cache lines.
+     */
+    public static ContentionManager exponential() {
+        ContentionManager result = new ContentionManager(true, 16);
+        result.setSpins(Site.FIND_RESTART, 0, 0);
+        result.setSpins(Site.INSERT_RETRY, 4, 256);
+        result.setSpins(Site.REMOVE_RETRY, 4, 512);
+        result.setSpins(Site.RELOCATE_RETRY, 1, 16);
+        return result;
+    }
+
+    /**
+     * Sets the bounds of the wait at site, in Thread.onSpinWait calls. Not thread-safe:
+     * tune the manager before handing it to a tree.
+     */
+    public ContentionManager setSpins(Site site, int min, int max) {
+        if (min < 0 || max < min || min == 0 && max > 0) {
+            throw new IllegalArgumentException("spins must satisfy 0 < min <= max, or be 0 and 0");
+        }
+        minSpins[site.ordinal()] = min;
+        maxSpins[site.ordinal()] = max;
+        return this;
+    }
+
+    /**
+     * Called before the given retry in a row (0 for the first) at site.
+     */
+    void backOff(Site site, int attempt) {
+        int s = site.ordinal();
+        retries[s].increment();
+        if (attempt >= yieldAfter) {
+            Thread.yield();
+            return;
+        }
+        int bound = Math.min(maxSpins[s], minSpins[s] << Math.min(attempt, 20));
+        int spins = randomized && bound > 1 ? 1 + ThreadLocalRandom.current().nextInt(bound) : bound;
+        for (int i = 0; i < spins; i++) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * How often site has retried since the manager was created or last reset.
+     */
+    public long retries(Site site) {
+        return retries[site.ordinal()].sum();
+    }
+
+    public void resetRetries() {
+        for (LongAdder r : retries) {
+            r.reset();
+        }
+    }
+
+    /**
+     * The retry counts as site=count pairs, e.g. for a log line.
+     */
+    public String retriesSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Site site : SITES) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(site.name().toLowerCase()).append('=').append(retries(site));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package algorithms;
+
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import main.BSTInterface;
+
+/**
+ * A java.util.TreeSet (a red-black tree) behind one read-write lock, as the
+ * coarse-grained baseline: searches share the lock, and every update has the whole
+ * tree to itself. size and the key sum are kept under the write lock.
+ */
+public class LockedTreeSet implements BSTInterface {
+    private final TreeSet<Integer> set = new TreeSet<Integer>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private long keysum;
+
+    public boolean contains(final int key) {
+        lock.readLock().lock();
+        try {
+            return set.contains(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean insert(final int key) {
+        lock.writeLock().lock();
+        try {
+            if (!set.add(key)) {
+                return false;
+            }
+            keysum += key;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean remove(final int key) {
+        lock.writeLock().lock();
+        try {
+            if (!set.remove(key)) {
+                return false;
+            }
+            keysum -= key;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return set.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getKeysum() {
+        lock.readLock().lock();
+        try {
+            return keysum;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int ceiling(final int key, final int defaultValue) {
+        return nearest(key, true, true, defaultValue);
+    }
+
+    public int higher(final int key, final int defaultValue) {
+        return nearest(key, true, false, defaultValue);
+    }
+
+    public int floor(final int key, final int defaultValue) {
+        return nearest(key, false, true, defaultValue);
+    }
+
+    public int lower(final int key, final int defaultValue) {
+        return nearest(key, false, false, defaultValue);
+    }
+
+    public int first(final int defaultValue) {
+        return higher(Integer.MIN_VALUE, defaultValue);
+    }
+
+    public int last(final int defaultValue) {
+        return floor(Integer.MAX_VALUE, defaultValue);
+    }
+
+    private int nearest(final int key, final boolean above, final boolean inclusive, final int defaultValue) {
+        lock.readLock().lock();
+        try {
+            Integer result = above ? (inclusive ? set.ceiling(key) : set.higher(key))
+                                   : (inclusive ? set.floor(key) : set.lower(key));
+            return result == null ? defaultValue : result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String getName() {
+        return "LockedTreeSet";
+    }
+}
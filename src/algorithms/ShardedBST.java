@@ -0,0 +1,247 @@
+package algorithms;
+
+import java.util.Arrays;
+import java.util.function.BiFunction;
+import java.util.function.IntConsumer;
+
+import main.BSTInterface;
+
+/**
+ * Splits the key space into ranges and keeps each range in its own BST, so that
+ * threads working on different ranges share neither a root nor a generation counter.
+ */
+public class ShardedBST implements BSTInterface {
+    // shard i holds the keys k with splits[i-1] <= k < splits[i]
+    final int[] splits;
+    final BST[] shards;
+
+    public ShardedBST(int[] splits, BST.Option... options) {
+        for (int i = 1; i < splits.length; i++) {
+            if (splits[i] <= splits[i-1]) {
+                throw new IllegalArgumentException("split points must be strictly increasing");
+            }
+        }
+        this.splits = splits.clone();
+        this.shards = new BST[splits.length + 1];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new BST(options);
+        }
+    }
+
+    /**
+     * Creates nshards shards covering the keys [1, maxKey] in equal ranges.
+     */
+    public ShardedBST(int nshards, int maxKey, BST.Option... options) {
+        this(evenSplits(nshards, maxKey), options);
+    }
+
+    static int[] evenSplits(int nshards, int maxKey) {
+        if (nshards < 1 || nshards > maxKey) {
+            throw new IllegalArgumentException("number of shards must be in [1, " + maxKey + "]");
+        }
+        int[] result = new int[nshards - 1];
+        for (int i = 1; i < nshards; i++) {
+            result[i-1] = 1 + (int) ((long) maxKey * i / nshards);
+        }
+        return result;
+    }
+
+    BST shardFor(int key) {
+        return shards[indexFor(key)];
+    }
+
+    private int indexFor(int key) {
+        int lo = 0, hi = splits.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (key < splits[mid]) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    public boolean contains(final int key) {
+        return shardFor(key).contains(key);
+    }
+
+    public boolean insert(final int key) {
+        return shardFor(key).insert(key);
+    }
+
+    public boolean remove(final int key) {
+        return shardFor(key).remove(key);
+    }
+
+    /**
+     * BST.rangeScan over the shards that overlap [lo, hi], in key order.
+     */
+    public void rangeScan(int lo, int hi, IntConsumer action) {
+        for (int i = indexFor(lo); i < shards.length && (i == 0 || splits[i-1] <= hi); i++) {
+            shards[i].rangeScan(lo, hi, action);
+        }
+    }
+
+    public int count(int lo, int hi) {
+        int result = 0;
+        for (int i = indexFor(lo); i < shards.length && (i == 0 || splits[i-1] <= hi); i++) {
+            result += shards[i].count(lo, hi);
+        }
+        return result;
+    }
+
+    /**
+     * BST.bulkLoadParallel of each shard's slice of sortedKeys.
+     */
+    public void bulkLoad(int[] sortedKeys) {
+        int from = 0;
+        for (int i = 0; i < shards.length; i++) {
+            int to = sliceEnd(sortedKeys, from, i);
+            shards[i].bulkLoadParallel(Arrays.copyOfRange(sortedKeys, from, to));
+            from = to;
+        }
+    }
+
+    // end of the run of sortedKeys, starting at from, that belongs to shard i
+    private int sliceEnd(int[] sortedKeys, int from, int i) {
+        int to = from;
+        while (to < sortedKeys.length && (i == splits.length || sortedKeys[to] < splits[i])) {
+            to++;
+        }
+        return to;
+    }
+
+    public long[] insertAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BST::insertAll);
+    }
+
+    public long[] removeAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BST::removeAll);
+    }
+
+    public long[] containsAll(final int[] sortedKeys) {
+        return batch(sortedKeys, BST::containsAll);
+    }
+
+    // runs op on each shard's slice of sortedKeys and joins the bitmaps
+    private long[] batch(int[] sortedKeys, BiFunction<BST, int[], long[]> op) {
+        long[] result = new long[(sortedKeys.length + 63) >>> 6];
+        int from = 0;
+        for (int i = 0; i < shards.length && from < sortedKeys.length; i++) {
+            int to = sliceEnd(sortedKeys, from, i);
+            if (to > from) {
+                long[] slice = op.apply(shards[i], Arrays.copyOfRange(sortedKeys, from, to));
+                for (int j = 0; j < to - from; j++) {
+                    if ((slice[j >>> 6] & (1L << j)) != 0) {
+                        result[(from + j) >>> 6] |= 1L << (from + j);
+                    }
+                }
+            }
+            from = to;
+        }
+        return result;
+    }
+
+    /*
+     * Ordered queries look in key's own shard first, then walk outwards to the first
+     * shard that has a key on the right side.
+     */
+    public int ceiling(final int key, final int defaultValue) {
+        return nearest(key, true, true, defaultValue);
+    }
+
+    public int higher(final int key, final int defaultValue) {
+        return nearest(key, true, false, defaultValue);
+    }
+
+    public int floor(final int key, final int defaultValue) {
+        return nearest(key, false, true, defaultValue);
+    }
+
+    public int lower(final int key, final int defaultValue) {
+        return nearest(key, false, false, defaultValue);
+    }
+
+    public int first(final int defaultValue) {
+        return higher(Integer.MIN_VALUE, defaultValue);
+    }
+
+    public int last(final int defaultValue) {
+        return floor(Integer.MAX_VALUE, defaultValue);
+    }
+
+    private int nearest(int key, boolean above, boolean inclusive, int defaultValue) {
+        for (int i = indexFor(key); i >= 0 && i < shards.length; i += above ? 1 : -1) {
+            long result = shards[i].nearest(key, above, inclusive);
+            if (result != BST.NONE) {
+                return (int) result;
+            }
+        }
+        return defaultValue;
+    }
+
+    public int size() {
+        int result = 0;
+        for (BST shard : shards) {
+            result += shard.size();
+        }
+        return result;
+    }
+
+    public String getName() {
+        return "ShardedBST";
+    }
+
+    public long getKeysum() {
+        long result = 0;
+        for (BST shard : shards) {
+            result += shard.getKeysum();
+        }
+        return result;
+    }
+
+    /**
+     * Average depth of a key within its shard, over all shards.
+     */
+    public double averageDepth() {
+        long nodes = 0, depthSum = 0;
+        for (BST shard : shards) {
+            long[] totals = shard.depthTotals();
+            nodes += totals[0];
+            depthSum += totals[1];
+        }
+        return nodes == 0 ? 0 : depthSum / (double) nodes;
+    }
+
+    /**
+     * Retries at site, over all shards.
+     */
+    public long retries(ContentionManager.Site site) {
+        long result = 0;
+        for (BST shard : shards) {
+            result += shard.getContentionManager().retries(site);
+        }
+        return result;
+    }
+
+    public void resetRetries() {
+        for (BST shard : shards) {
+            shard.getContentionManager().resetRetries();
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    public boolean checkBSTProperty() {
+        for (BST shard : shards) {
+            if (!shard.checkBSTProperty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
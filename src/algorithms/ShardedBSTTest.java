@@ -0,0 +1,144 @@
+package algorithms;
+
+import main.BSTInterface;
+
+public class ShardedBSTTest {
+    
+    public static void main(String[] args) {
+        System.out.println("Starting ShardedBST Tests...");
+        
+        testEvenSplits();
+        testRouting();
+        testAggregates();
+        testRangeScan();
+        testBulkLoad();
+        testBatchOperations();
+        testOrderedQueries();
+        
+        System.out.println("All tests completed successfully!");
+    }
+    
+    private static void testEvenSplits() {
+        System.out.println("Testing split point derivation...");
+        
+        int[] splits = ShardedBST.evenSplits(4, 100);
+        assert splits.length == 3 : "4 shards should need 3 split points";
+        assert splits[0] == 26 && splits[1] == 51 && splits[2] == 76 : "Splits should divide [1, 100] evenly";
+        assert ShardedBST.evenSplits(1, 100).length == 0 : "A single shard needs no split points";
+        
+        System.out.println("Split point tests passed");
+    }
+    
+    private static void testRouting() {
+        System.out.println("Testing key routing...");
+        ShardedBST bst = new ShardedBST(new int[] {0, 100});
+        
+        assert bst.getShardCount() == 3 : "Two split points should give 3 shards";
+        assert bst.shardFor(-5) == bst.shards[0] : "Keys below the first split go to the first shard";
+        assert bst.shardFor(0) == bst.shards[1] : "A split point belongs to the shard above it";
+        assert bst.shardFor(99) == bst.shards[1] : "99 should go to the middle shard";
+        assert bst.shardFor(100) == bst.shards[2] : "100 should go to the last shard";
+        assert bst.shardFor(Integer.MAX_VALUE) == bst.shards[2] : "Keys above the last split go to the last shard";
+        
+        System.out.println("Routing tests passed");
+    }
+    
+    private static void testAggregates() {
+        System.out.println("Testing size and keysum across shards...");
+        BSTInterface bst = new ShardedBST(4, 100);
+        
+        long expectedSum = 0;
+        for (int val = 1; val <= 100; val += 3) {
+            assert bst.insert(val) : "Should insert " + val;
+            assert !bst.insert(val) : "Should not insert duplicate " + val;
+            expectedSum += val;
+        }
+        assert bst.size() == 34 : "Size should be 34";
+        assert bst.getKeysum() == expectedSum : "Keysum should match expected";
+        
+        for (int val = 1; val <= 100; val++) {
+            assert bst.contains(val) == (val % 3 == 1) : "Membership of " + val + " should match insertions";
+        }
+        
+        assert bst.remove(1) : "Should remove 1";
+        assert bst.remove(100) : "Should remove 100";
+        assert !bst.remove(2) : "Should not remove absent 2";
+        assert bst.size() == 32 : "Size should be 32";
+        assert bst.getKeysum() == expectedSum - 101 : "Keysum should drop by 101";
+        assert ((ShardedBST) bst).checkBSTProperty() : "Every shard should satisfy the BST property";
+        
+        System.out.println("Aggregate tests passed");
+    }
+    
+    private static void testRangeScan() {
+        System.out.println("Testing range scans across shards...");
+        ShardedBST bst = new ShardedBST(4, 100);
+        for (int val = 1; val <= 100; val++) {
+            bst.insert(val);
+        }
+        
+        int[] last = {0};
+        bst.rangeScan(20, 80, key -> {
+            assert key == last[0] + 1 || last[0] == 0 : "Keys should come in order across shards";
+            last[0] = key;
+        });
+        assert last[0] == 80 : "Scan should end at 80";
+        assert bst.count(20, 80) == 61 : "Should count 61 keys in [20, 80]";
+        assert bst.count(26, 26) == 1 : "A split point should be counted once";
+        assert bst.count(Integer.MIN_VALUE, Integer.MAX_VALUE) == 100 : "Should count all keys";
+        
+        System.out.println("Range scan tests passed");
+    }
+    
+    private static void testBulkLoad() {
+        System.out.println("Testing bulk loads across shards...");
+        ShardedBST bst = new ShardedBST(4, 100);
+        int[] keys = new int[50];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = 2 * i + 1;
+        }
+        bst.bulkLoad(keys);
+        
+        assert bst.size() == 50 : "Size should be 50";
+        assert bst.getKeysum() == 2500 : "Keysum should be 2500";
+        for (int val = 1; val <= 100; val++) {
+            assert bst.contains(val) == (val % 2 == 1) : "Membership of " + val + " should match the loaded keys";
+            assert bst.shardFor(val).contains(val) == (val % 2 == 1) : val + " should be loaded into its own shard";
+        }
+        assert bst.checkBSTProperty() : "Every shard should satisfy the BST property";
+        
+        System.out.println("Bulk load tests passed");
+    }
+    
+    private static void testBatchOperations() {
+        System.out.println("Testing batch operations across shards...");
+        BSTInterface bst = new ShardedBST(4, 100);
+        bst.insert(50);
+        
+        int[] keys = {10, 25, 26, 50, 51, 99};
+        long[] inserted = bst.insertAll(keys);
+        assert inserted[0] == 0b110111 : "All but 50 should be inserted, got " + Long.toBinaryString(inserted[0]);
+        assert bst.size() == 6 : "Size should be 6";
+        assert bst.containsAll(new int[] {9, 10, 26, 100})[0] == 0b0110 : "containsAll should find 10 and 26";
+        assert bst.removeAll(new int[] {10, 11, 99})[0] == 0b101 : "removeAll should remove 10 and 99";
+        assert bst.getKeysum() == 25 + 26 + 50 + 51 : "Keysum should match the keys left";
+        
+        System.out.println("Batch operation tests passed");
+    }
+    
+    private static void testOrderedQueries() {
+        System.out.println("Testing ordered queries across shards...");
+        BSTInterface bst = new ShardedBST(4, 100);
+        assert bst.first(-1) == -1 : "An empty tree has no first key";
+        bst.insert(10);
+        bst.insert(90);
+        
+        assert bst.first(-1) == 10 && bst.last(-1) == 90 : "first and last should look across shards";
+        assert bst.ceiling(11, -1) == 90 : "ceiling should move on to later shards";
+        assert bst.floor(89, -1) == 10 : "floor should move back to earlier shards";
+        assert bst.higher(10, -1) == 90 && bst.lower(90, -1) == 10 : "higher and lower should cross shards";
+        assert bst.ceiling(91, -1) == -1 && bst.floor(9, -1) == -1 : "There is nothing past either end";
+        
+        System.out.println("Ordered query tests passed");
+    }
+}
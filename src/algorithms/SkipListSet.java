@@ -0,0 +1,70 @@
+package algorithms;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import main.BSTInterface;
+
+/**
+ * The JDK's lock-free ConcurrentSkipListSet behind BSTInterface, as a baseline. Keys
+ * are boxed on every call, which is part of what it costs to use it.
+ */
+public class SkipListSet implements BSTInterface {
+    private final ConcurrentSkipListSet<Integer> set = new ConcurrentSkipListSet<Integer>();
+
+    public boolean contains(final int key) {
+        return set.contains(key);
+    }
+
+    public boolean insert(final int key) {
+        return set.add(key);
+    }
+
+    public boolean remove(final int key) {
+        return set.remove(key);
+    }
+
+    // O(n), like ConcurrentSkipListSet.size
+    public int size() {
+        return set.size();
+    }
+
+    public long getKeysum() {
+        long result = 0;
+        for (int key : set) {
+            result += key;
+        }
+        return result;
+    }
+
+    public int ceiling(final int key, final int defaultValue) {
+        Integer result = set.ceiling(key);
+        return result == null ? defaultValue : result;
+    }
+
+    public int higher(final int key, final int defaultValue) {
+        Integer result = set.higher(key);
+        return result == null ? defaultValue : result;
+    }
+
+    public int floor(final int key, final int defaultValue) {
+        Integer result = set.floor(key);
+        return result == null ? defaultValue : result;
+    }
+
+    public int lower(final int key, final int defaultValue) {
+        Integer result = set.lower(key);
+        return result == null ? defaultValue : result;
+    }
+
+    public int first(final int defaultValue) {
+        return higher(Integer.MIN_VALUE, defaultValue);
+    }
+
+    public int last(final int defaultValue) {
+        return floor(Integer.MAX_VALUE, defaultValue);
+    }
+
+    public String getName() {
+        return "SkipList";
+    }
+}
@@ -0,0 +1,150 @@
+package algorithms;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Size and key-sum counters split into cells, striped by thread like LongAdder: a
+ * thread always updates the cell its id hashes to, and readers add up all cells.
+ * There is a fixed number of cells, about twice the number of processors, so the
+ * counters do not grow with the number of threads that ever used them (virtual
+ * threads in particular), and nothing has to be registered or reclaimed. Threads
+ * that share a cell only contend on it while both update at once.
+ *
+ * Each cell is a seqlock: an update takes the version from even to odd with a CAS,
+ * which also keeps the threads of a cell out of each other's way, and back to even
+ * once size and key sum are written. size and keysum read each cell without looking
+ * at its version, so they may be a few updates apart from each other.
+ * snapshotSize/snapshotKeysum collect all cells twice and retry until no version
+ * changed in between, which gives a linearizable view of the counters at the cost of
+ * possibly spinning while writers are active.
+ */
+final class StripedCounters {
+    /**
+     * A padded cell guarded by its version, which is odd while a thread updates it.
+     * Also the base of the cells of BSTMetrics.
+     */
+    static class Stripe {
+        long p0, p1, p2, p3, p4, p5, p6; // keep neighbouring cells off this cache line
+        volatile long version;
+
+        // takes the cell for an update; returns the version to pass to unlock
+        final long lock() {
+            for (int spins = 0; ; spins++) {
+                long v = version;
+                if ((v & 1) == 0 && VERSION.compareAndSet(this, v, v + 1)) {
+                    return v;
+                }
+                if (spins < 64) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        }
+
+        final void unlock(long v) {
+            version = v + 2;
+        }
+    }
+
+    static final class Cell extends Stripe {
+        long size;
+        long keysum;
+        long q0, q1, q2, q3, q4, q5, q6;
+
+        void add(long delta, long key) {
+            long v = lock();
+            SIZE.setOpaque(this, size + delta);
+            KEYSUM.setOpaque(this, keysum + key);
+            unlock(v);
+        }
+    }
+
+    // a power of two, at least 2, so that a hash picks a cell with its top bits
+    static final int STRIPES = Integer.highestOneBit(2 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+    private static final int STRIPE_BITS = Integer.numberOfTrailingZeros(STRIPES);
+
+    /**
+     * The cell of the calling thread. Thread ids are handed out in sequence, and the
+     * Fibonacci hash spreads consecutive ones over different cells.
+     */
+    @SuppressWarnings("deprecation") // getId, as threadId needs Java 19
+    static int stripe() {
+        return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> (64 - STRIPE_BITS));
+    }
+
+    private static final VarHandle VERSION;
+    private static final VarHandle SIZE;
+    private static final VarHandle KEYSUM;
+    static {
+        try {
+            MethodHandles.Lookup l = MethodHandles.lookup();
+            VERSION = l.findVarHandle(Stripe.class, "version", long.class);
+            SIZE = l.findVarHandle(Cell.class, "size", long.class);
+            KEYSUM = l.findVarHandle(Cell.class, "keysum", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Cell[] cells = new Cell[STRIPES];
+
+    StripedCounters() {
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new Cell();
+        }
+    }
+
+    Cell cell() {
+        return cells[stripe()];
+    }
+
+    long size() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += (long) SIZE.getOpaque(c);
+        }
+        return result;
+    }
+
+    long keysum() {
+        long result = 0;
+        for (Cell c : cells) {
+            result += (long) KEYSUM.getOpaque(c);
+        }
+        return result;
+    }
+
+    long snapshotSize() {
+        return snapshot(true);
+    }
+
+    long snapshotKeysum() {
+        return snapshot(false);
+    }
+
+    private long snapshot(boolean wantSize) {
+        while (true) {
+            Cell[] cs = cells;
+            long[] versions = new long[cs.length];
+            long result = 0;
+            boolean stable = true;
+            for (int i = 0; i < cs.length && stable; i++) {
+                long v = cs[i].version;
+                result += wantSize ? (long) SIZE.getOpaque(cs[i]) : (long) KEYSUM.getOpaque(cs[i]);
+                VarHandle.loadLoadFence();
+                stable = (v & 1) == 0 && cs[i].version == v;
+                versions[i] = v;
+            }
+            // second collect: no cell may have changed since it was first read
+            for (int i = 0; i < cs.length && stable; i++) {
+                stable = cs[i].version == versions[i];
+            }
+            if (stable) {
+                return result;
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
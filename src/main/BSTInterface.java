@@ -26,4 +26,62 @@ public interface BSTInterface {
     public int size();
     public String getName();
     public long getKeysum();
+
+    /*
+     * Batch versions of insert, remove and contains, for keys sorted in increasing
+     * order. Bit i of the result (bit i%64 of word i/64) is the result for keys[i].
+     * Implementations may share work between neighbouring keys; these defaults just
+     * handle one key at a time.
+     */
+    public default long[] insertAll(final int[] sortedKeys) {
+        long[] result = new long[(sortedKeys.length + 63) >>> 6];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (insert(sortedKeys[i])) result[i >>> 6] |= 1L << i;
+        }
+        return result;
+    }
+
+    public default long[] removeAll(final int[] sortedKeys) {
+        long[] result = new long[(sortedKeys.length + 63) >>> 6];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (remove(sortedKeys[i])) result[i >>> 6] |= 1L << i;
+        }
+        return result;
+    }
+
+    public default long[] containsAll(final int[] sortedKeys) {
+        long[] result = new long[(sortedKeys.length + 63) >>> 6];
+        for (int i = 0; i < sortedKeys.length; i++) {
+            if (contains(sortedKeys[i])) result[i >>> 6] |= 1L << i;
+        }
+        return result;
+    }
+
+    /*
+     * Ordered queries: the closest key on one side of key, or defaultValue if there
+     * is none. Only trees that keep their keys in order provide them.
+     */
+    public default int ceiling(final int key, final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
+
+    public default int higher(final int key, final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
+
+    public default int floor(final int key, final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
+
+    public default int lower(final int key, final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
+
+    public default int first(final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
+
+    public default int last(final int defaultValue) {
+        throw new UnsupportedOperationException("ordered queries are not supported");
+    }
 }
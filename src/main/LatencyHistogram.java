@@ -0,0 +1,104 @@
+package main;
+
+/**
+ * A histogram of latencies in nanoseconds, in the log-linear layout of HdrHistogram:
+ * values below 64 get a bucket each, and every power of two above that is split
+ * into 32 buckets, so a recorded value is known to within about 3%. Recording is
+ * an index computation and an array increment, with no sharing; each worker keeps
+ * its own histograms and they are merged once the trial is over. The counts are
+ * kept in rows of 32 buckets that are allocated the first time a value lands in
+ * them, so that the tens of thousands of clients of -virtual do not each carry
+ * every row from nanoseconds to centuries.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int ROWS = (index(Long.MAX_VALUE) >>> SUB_BUCKET_BITS) + 1;
+
+    private final long[][] rows = new long[ROWS][]; // bucket i is rows[i / 32][i % 32]
+    private long total;
+    private long max;
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // the largest value that lands in the bucket at index
+    static long highestEquivalent(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long top = index % SUB_BUCKETS + SUB_BUCKETS;
+        return ((top + 1) << shift) - 1;
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0; // nanoTime is monotonic, but be safe against a bad clock
+        }
+        final int index = index(nanos);
+        long[] row = rows[index >>> SUB_BUCKET_BITS];
+        if (row == null) {
+            row = rows[index >>> SUB_BUCKET_BITS] = new long[SUB_BUCKETS];
+        }
+        row[index & (SUB_BUCKETS - 1)]++;
+        total++;
+        if (nanos > max) {
+            max = nanos;
+        }
+    }
+
+    public void add(LatencyHistogram other) {
+        for (int r = 0; r < ROWS; r++) {
+            if (other.rows[r] == null) {
+                continue;
+            }
+            if (rows[r] == null) {
+                rows[r] = new long[SUB_BUCKETS];
+            }
+            for (int i = 0; i < SUB_BUCKETS; i++) {
+                rows[r][i] += other.rows[r][i];
+            }
+        }
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * The smallest recorded value, to within a bucket, that percentile percent of the
+     * values are at or below; 0 if nothing was recorded.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int r = 0; r < ROWS; r++) {
+            if (rows[r] == null) {
+                continue;
+            }
+            for (int i = 0; i < SUB_BUCKETS; i++) {
+                seen += rows[r][i];
+                if (seen >= rank) {
+                    return Math.min(highestEquivalent(r * SUB_BUCKETS + i), max);
+                }
+            }
+        }
+        return max;
+    }
+}
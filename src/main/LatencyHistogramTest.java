@@ -0,0 +1,55 @@
+package main;
+
+public class LatencyHistogramTest {
+
+    public static void main(String[] args) {
+        System.out.println("Starting LatencyHistogram Tests...");
+
+        testBuckets();
+        testPercentiles();
+
+        System.out.println("All tests completed successfully!");
+    }
+
+    private static void testBuckets() {
+        System.out.println("Testing bucket layout...");
+
+        for (long v = 0; v < 64; v++) {
+            assert LatencyHistogram.highestEquivalent(LatencyHistogram.index(v)) == v : "Small values should be exact";
+        }
+        int previous = LatencyHistogram.index(63);
+        for (long v = 64; v < 1 << 20; v++) {
+            int index = LatencyHistogram.index(v);
+            assert index == previous || index == previous + 1 : "Buckets should be contiguous at " + v;
+            long high = LatencyHistogram.highestEquivalent(index);
+            assert high >= v && high - v <= v / 32 : "Bucket of " + v + " should end within 1/32 of it, ends at " + high;
+            previous = index;
+        }
+        assert LatencyHistogram.highestEquivalent(LatencyHistogram.index(Long.MAX_VALUE)) == Long.MAX_VALUE : "Top bucket should end at Long.MAX_VALUE";
+
+        System.out.println("Bucket layout tests passed");
+    }
+
+    private static void testPercentiles() {
+        System.out.println("Testing percentiles...");
+
+        LatencyHistogram empty = new LatencyHistogram();
+        assert empty.valueAtPercentile(99) == 0 && empty.getMax() == 0 : "An empty histogram should report 0";
+
+        // two halves, merged: 1..1000 and 100000 a thousand times
+        LatencyHistogram a = new LatencyHistogram(), b = new LatencyHistogram();
+        for (int v = 1; v <= 1000; v++) {
+            a.record(v);
+            b.record(100000);
+        }
+        a.add(b);
+        assert a.getCount() == 2000 : "Count should cover both";
+        assert a.getMax() == 100000 : "Max should be exact";
+        long p50 = a.valueAtPercentile(50);
+        assert p50 >= 1000 && p50 <= 1000 + 1000 / 32 : "p50 should be 1000 to within a bucket, was " + p50;
+        assert a.valueAtPercentile(99) == 100000 : "p99 should be capped at the max";
+        assert a.valueAtPercentile(0) == 1 : "p0 should be the smallest value";
+
+        System.out.println("Percentile tests passed");
+    }
+}
@@ -29,6 +29,7 @@ import java.util.Map.Entry;
 import java.util.TreeMap;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 public class Main {
 
@@ -48,6 +49,11 @@ public class Main {
     protected String alg;
     protected SwitchMap switches;
     protected boolean prefill;
+    protected String recordFile; // -record: where to write the trace of each trial, or null
+    protected String replayFile; // -replay: the trace to replay instead of random operations, or null
+    private OpTrace.Reader replayTrace;
+    private String recordPath; // the trace file of the trial being run
+    private int recordSeed; // the seed the trial being recorded was set up with
     
     // some timing variables
     protected AtomicLong startUserTime = new AtomicLong(0);
@@ -65,10 +71,61 @@ public class Main {
         this.prefill = prefill;
     }
     
+    // key distributions for -dist-*; the switch "dist" holds the ordinal
+    public enum Distribution { UNIFORM, ZIPF, HOTSPOT, SEQUENTIAL, SHIFTING }
+
+    // ops a SHIFTING generator performs before its hot set moves on by its own size
+    static final int SHIFT_OPS = 1 << 16;
+
+    // zeta(maxKey, theta) for ZIPF, shared by the generators of all threads and trials
+    private int zetaKeys;
+    private double zetaTheta, zeta;
+
+    synchronized double zeta(final int n, final double theta) {
+        if (n != zetaKeys || theta != zetaTheta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) sum += 1 / Math.pow(i, theta);
+            zetaKeys = n;
+            zetaTheta = theta;
+            zeta = sum;
+        }
+        return zeta;
+    }
+
+    String distributionName() {
+        switch (Distribution.values()[(int) switches.get("dist")]) {
+            case ZIPF: return "zipf" + switches.get("dist-theta");
+            case HOTSPOT: return "hotspot" + (int) switches.get("dist-hot-ops") + "-" + (int) switches.get("dist-hot-keys");
+            case SEQUENTIAL: return "sequential";
+            case SHIFTING: return "shifting" + (int) switches.get("dist-hot-ops") + "-" + (int) switches.get("dist-hot-keys");
+            default: return "uniform";
+        }
+    }
+
+    /**
+     * Supplies the keys of one thread, in [1, maxKey], from the distribution chosen
+     * with -dist-*. next() neither allocates nor boxes.
+     *
+     * ZIPF is the generator of Gray et al. ("Quickly generating billion-record
+     * synthetic databases") as used by YCSB: rank r is drawn with probability
+     * proportional to 1/r^theta, and ranks are scattered over the key range by
+     * multiplying with a prime above it, so that the hot keys do not all sit in one
+     * subtree. HOTSPOT sends hotOps% of the operations to the lowest hotKeys% of the
+     * keys. SHIFTING does the same with a hot set that moves to the next hotKeys% of
+     * the range every SHIFT_OPS operations. SEQUENTIAL walks the keys in order, with
+     * each thread taking every numberOfIds-th key, and wraps around at the end.
+     */
     public final class RandomGenerator {
+        static final long SCATTER = 2147483647L; // prime, and above any int key range
+
         final Random rng;
         final int maxKey;
         final int id, numberOfIds;
+        final Distribution dist;
+        final double theta, zetan, alpha, eta, half; // ZIPF
+        final int hotOps, hotKeys; // HOTSPOT and SHIFTING: hotOps is out of Integer.MAX_VALUE
+        int nextKey; // SEQUENTIAL
+        int ops, hotStart; // SHIFTING
 
         public RandomGenerator(final int id, final int numberOfIds, final Random rng, final int maxKey) {
             if (maxKey < 0) throw new RuntimeException("maxKey must be > 0");
@@ -76,10 +133,59 @@ public class Main {
             this.maxKey = maxKey;
             this.id = id;
             this.numberOfIds = numberOfIds;
+            this.dist = Distribution.values()[(int) switches.get("dist")];
+
+            this.theta = switches.get("dist-theta");
+            if (dist == Distribution.ZIPF) {
+                this.zetan = zeta(maxKey, theta);
+                this.alpha = 1 / (1 - theta);
+                this.eta = (1 - Math.pow(2. / maxKey, 1 - theta)) / (1 - (1 + Math.pow(0.5, theta)) / zetan);
+                this.half = 1 + Math.pow(0.5, theta);
+            } else {
+                this.zetan = this.alpha = this.eta = this.half = 0;
+            }
+            this.hotOps = (int) (switches.get("dist-hot-ops") / 100 * Integer.MAX_VALUE);
+            this.hotKeys = Math.max(1, Math.min(maxKey, (int) (maxKey * switches.get("dist-hot-keys") / 100)));
+            this.nextKey = 1 + id % maxKey;
+        }
+
+        public int next() {
+            switch (dist) {
+                case ZIPF: return 1 + (int) (zipfRank() * SCATTER % maxKey);
+                case HOTSPOT: return 1 + hotspot(0);
+                case SEQUENTIAL: {
+                    final int key = nextKey;
+                    nextKey += numberOfIds;
+                    if (nextKey > maxKey) nextKey -= maxKey;
+                    return key;
+                }
+                case SHIFTING: {
+                    if (++ops == SHIFT_OPS) {
+                        ops = 0;
+                        hotStart = (int) (((long) hotStart + hotKeys) % maxKey);
+                    }
+                    return 1 + hotspot(hotStart);
+                }
+                default: return rng.nextNatural(maxKey)+1;
+            }
+        }
+
+        // 0-based rank, 0 the most frequent
+        private long zipfRank() {
+            final double u = rng.nextNatural() / (double) Integer.MAX_VALUE;
+            final double uz = u * zetan;
+            if (uz < 1) return 0;
+            if (uz < half) return 1;
+            return Math.min(maxKey - 1, (long) (maxKey * Math.pow(eta * u - eta + 1, alpha)));
         }
 
-        public Integer next() {
-            return rng.nextNatural(maxKey)+1;
+        // 0-based key, hot if it is one of the hotKeys keys from start on (wrapping around)
+        private int hotspot(final int start) {
+            final int coldKeys = maxKey - hotKeys;
+            final int offset = coldKeys == 0 || rng.nextNatural() < hotOps
+                    ? rng.nextNatural(hotKeys)
+                    : hotKeys + rng.nextNatural(coldKeys);
+            return (int) (((long) start + offset) % maxKey);
         }
     }
 
@@ -91,6 +197,8 @@ public class Main {
         public abstract int getFalseDel();
         public abstract int getTrueFind();
         public abstract int getFalseFind();
+        public abstract int getTrueOrd();
+        public abstract int getFalseOrd();
         public abstract long getEndTime();
         public abstract long getStartTime();
         public abstract long getMyStartCPUTime();
@@ -100,17 +208,56 @@ public class Main {
         public abstract long getWallTime();
         public abstract long getCPUTime();
         public abstract long getKeysum();
+        public abstract LatencyHistogram[] getLatencies(); // one per OP_NAMES entry, or null if not recorded
+        public abstract LatencyHistogram[] getStepLatencies(); // all operations, one per step of the -rate schedule, or null
     }
+
+    /**
+     * Makes a virtual thread where the JDK has them (21 and later), or is null. Found
+     * reflectively, as the harness is built for Java 17.
+     */
+    static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory();
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    // target ops/s over all threads for each step of an open-loop trial, or null for closed loop
+    double[] rateSchedule() {
+        final int steps = (int) switches.get("rate-steps");
+        if (steps == 0) return null;
+        final double[] result = new double[steps];
+        for (int i = 0; i < steps; i++) result[i] = switches.get("rate-" + i);
+        return result;
+    }
+
+    // the kinds of operation that latencies are recorded for, in CSV column order
+    static final String[] OP_NAMES = {"ins", "del", "find", "ord"};
+    static final int INS = 0, DEL = 1, FIND = 2, ORD = 3;
     
     public class TimedWorker extends Worker {
         public final long WORK_TIME;
         CyclicBarrier start;
+        final CountDownLatch go; // released by the main thread once the experiment is RUNNING
         RandomGenerator gen;
         BSTInterface tree;
-        int trueDel, falseDel, trueIns, falseIns, trueFind, falseFind;
+        int trueDel, falseDel, trueIns, falseIns, trueFind, falseFind, trueOrd, falseOrd;
         long keysum; // sum of new keys inserted by this thread minus keys deleted by this thread
         final Experiment ex;
         Random rng;
+        final LatencyHistogram[] latencies; // null unless -latency
+        final double[] schedule = rateSchedule();
+        final LatencyHistogram[] stepLatencies; // null unless open loop
+        final boolean virtual = switches.get("virtual") != 0;
+        final double thinkNanos = switches.get("think") * 1e3; // mean pause between operations
+        OpTrace.Recorder recorder; // null unless -record
+        OpTrace.Cursor replay; // null unless -replay; the operations of this thread in the trace
+        long mismatches; // replayed operations whose result differs from the trace
 
         private long id;
         private ThreadMXBean bean;
@@ -131,6 +278,7 @@ public class Main {
                            final java.util.Random rng,
                            final BSTInterface tree,
                            final CyclicBarrier start,
+                           final CountDownLatch go,
                            final AtomicLong sharedStart,
                            final AtomicLong sharedStartWallTime,
                            final ArrayList<Worker> workers) {
@@ -140,20 +288,29 @@ public class Main {
             this.rng = new Random(rng.nextInt());
             this.tree = tree;
             this.start = start;
+            this.go = go;
             this.sharedStartUserTime = sharedStart;
             this.workers3 = workers;
             this.sharedStartWallTime = sharedStartWallTime;
+            this.latencies = switches.get("latency") != 0 ? new LatencyHistogram[OP_NAMES.length] : null;
+            if (latencies != null) {
+                for (int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
+            }
+            this.stepLatencies = schedule != null ? new LatencyHistogram[schedule.length] : null;
+            if (stepLatencies != null) {
+                for (int i = 0; i < stepLatencies.length; i++) stepLatencies[i] = new LatencyHistogram();
+            }
         }
 
         @Override
-        @SuppressWarnings("empty-statement")
         public final void run() {
             bean = ManagementFactory.getThreadMXBean();
-            if (!bean.isCurrentThreadCpuTimeSupported()) {
+            // there are no CPU times for virtual threads; the getters below return -1
+            if (!virtual && !bean.isCurrentThreadCpuTimeSupported()) {
                 System.out.println("THREAD CPU TIME UNSUPPORTED");
                 System.exit(-1);
             }
-            if (!bean.isThreadCpuTimeEnabled()) {
+            if (!virtual && !bean.isThreadCpuTimeEnabled()) {
                 System.out.println("THREAD CPU TIME DISABLED");
                 System.exit(-1);
             }
@@ -162,8 +319,9 @@ public class Main {
             // everyone waits on barrier
             if (start != null) try { start.await(); } catch (Exception e) { e.printStackTrace(); System.exit(-1); }
             
-            // everyone waits until main thread sets experiment state to RUNNING
-            while (ex.state == ExperimentState.PENDING);
+            // everyone waits until main thread sets experiment state to RUNNING; parked,
+            // so that waiting virtual threads leave their carriers to the others
+            try { go.await(); } catch (InterruptedException e) { e.printStackTrace(); System.exit(-1); }
 
             // start timing
             myStartUserTime = bean.getThreadUserTime(id);
@@ -173,29 +331,151 @@ public class Main {
             sharedStartWallTime.compareAndSet(0, myStartWallTime);
             
             // perform operations while experiment's state is running
-            while (ex.state == ExperimentState.RUNNING) {
-                final int key = gen.next();
-                final double op = rng.nextNatural() / (double) Integer.MAX_VALUE;
-                if (op < ratio.ins) {
+            final LatencyHistogram[] latencies = this.latencies;
+            if (schedule != null) {
+                runOpenLoop(sharedStartWallTime.get());
+            } else while (ex.state == ExperimentState.RUNNING) {
+                final long opStart = latencies != null ? System.nanoTime() : 0;
+                final int kind = operate();
+                if (kind < 0) break; // the end of a replayed trace
+                if (latencies != null) latencies[kind].record(System.nanoTime() - opStart);
+                if (thinkNanos > 0) think();
+            }
+            
+            // finish timing
+            wallTime = System.nanoTime();
+            userTime = bean.getThreadUserTime(id);
+            cpuTime = bean.getThreadCpuTime(id);
+        }
+
+        /*
+         * Open loop: operations are due at fixed times, whether or not the previous one
+         * has returned, and latency runs from the time an operation was due rather than
+         * from the time it was started. A tree that stalls therefore pays for every
+         * operation that should have run during the stall, instead of quietly issuing
+         * fewer of them (coordinated omission). The trial is split into equal steps,
+         * one per rate of the schedule, and each thread issues its 1/nprocs share of
+         * the rate, offset from the other threads so that they do not fire together.
+         * The last rate continues if the trial runs over.
+         */
+        private void runOpenLoop(final long begin) {
+            final long stepNanos = WORK_TIME / schedule.length;
+            int step = 0;
+            long stepStart = begin;
+            double interval = ex.nprocs * 1e9 / schedule[0];
+            long due = stepStart + (long) (interval * gen.id / ex.nprocs);
+            for (long j = 1; ex.state == ExperimentState.RUNNING; j++) {
+                if (!awaitDue(due)) break;
+                final int kind = operate();
+                if (kind < 0) break;
+                final long latency = System.nanoTime() - due;
+                latencies[kind].record(latency);
+                stepLatencies[step].record(latency);
+
+                due = stepStart + (long) (interval * (j + gen.id / (double) ex.nprocs));
+                if (step + 1 < schedule.length && due >= stepStart + stepNanos) {
+                    step++;
+                    stepStart += stepNanos;
+                    interval = ex.nprocs * 1e9 / schedule[step];
+                    due = stepStart + (long) (interval * gen.id / ex.nprocs);
+                    j = 0;
+                }
+            }
+        }
+
+        // waits until due, in slices short enough to notice the end of the trial;
+        // false if the trial ended first
+        private boolean awaitDue(final long due) {
+            long wait;
+            while ((wait = due - System.nanoTime()) > 0) {
+                if (ex.state != ExperimentState.RUNNING) return false;
+                if (wait > 100_000) LockSupport.parkNanos(Math.min(wait - 50_000, 1_000_000));
+                else Thread.onSpinWait();
+            }
+            return true;
+        }
+
+        /*
+         * A client's pause between requests: an exponentially distributed park with mean
+         * -think, which a virtual thread spends unmounted, as it would waiting on I/O.
+         * Without think time there is no pause, and no yield either, so virtual clients
+         * run operations back to back like platform threads do: with more clients than
+         * carriers, only as many as there are carriers run until the trial ends.
+         */
+        private void think() {
+            final double u = rng.nextNatural() / (Integer.MAX_VALUE + 1.);
+            LockSupport.parkNanos((long) (-Math.log(1 - u) * thinkNanos));
+        }
+
+        // one random operation, or the next one of the replayed trace; returns its
+        // kind, or -1 if the trace is over
+        private int operate() {
+            if (replay != null) {
+                if (!replay.next()) return -1;
+                final int result = perform(replay.op, replay.key);
+                if (result != replay.result) mismatches++;
+                return kindOf(replay.op);
+            }
+            final int key = gen.next();
+            final double op = rng.nextNatural() / (double) Integer.MAX_VALUE;
+            final byte code;
+            if (op < ratio.ins) code = OpTrace.INSERT;
+            else if (op < ratio.ins + ratio.del) code = OpTrace.REMOVE;
+            else if (op < ratio.ins + ratio.del + ratio.ord) code = (byte) (OpTrace.FLOOR + rng.nextNatural(4));
+            else code = OpTrace.CONTAINS;
+            final int result = perform(code, key);
+            if (recorder != null) recorder.record(code, key, result);
+            return kindOf(code);
+        }
+
+        // performs and counts one operation; returns 1 or 0 for the boolean operations,
+        // and the key found by an ordered query (keys are >= 1, so 0 means there was no answer)
+        private int perform(final byte op, final int key) {
+            switch (op) {
+                case OpTrace.INSERT:
                     if (tree.insert(key)) {
                         keysum += key;
                         trueIns++;
-                    } else falseIns++;                    
-                } else if (op < ratio.ins + ratio.del) {
+                        return 1;
+                    }
+                    falseIns++;
+                    return 0;
+                case OpTrace.REMOVE:
                     if (tree.remove(key)) {
                         keysum -= key;
                         trueDel++;
-                    } else falseDel++;
-                } else {
-                    if (tree.contains(key)) trueFind++;
-                    else falseFind++;
-                }
+                        return 1;
+                    }
+                    falseDel++;
+                    return 0;
+                case OpTrace.CONTAINS:
+                    if (tree.contains(key)) {
+                        trueFind++;
+                        return 1;
+                    }
+                    falseFind++;
+                    return 0;
+                default:
+                    final int result;
+                    switch (op) {
+                        case OpTrace.FLOOR: result = tree.floor(key, 0); break;
+                        case OpTrace.CEILING: result = tree.ceiling(key, 0); break;
+                        case OpTrace.LOWER: result = tree.lower(key, 0); break;
+                        default: result = tree.higher(key, 0); break;
+                    }
+                    if (result != 0) trueOrd++;
+                    else falseOrd++;
+                    return result;
+            }
+        }
+
+        private int kindOf(final byte op) {
+            switch (op) {
+                case OpTrace.INSERT: return INS;
+                case OpTrace.REMOVE: return DEL;
+                case OpTrace.CONTAINS: return FIND;
+                default: return ORD;
             }
-            
-            // finish timing
-            wallTime = System.nanoTime();
-            userTime = bean.getThreadUserTime(id);
-            cpuTime = bean.getThreadCpuTime(id);
         }
 
         public int getOpCount() { return 0; }
@@ -205,6 +485,8 @@ public class Main {
         public int getFalseDel() { return falseDel; }
         public int getTrueFind() { return trueFind; }
         public int getFalseFind() { return falseFind; }
+        public int getTrueOrd() { return trueOrd; }
+        public int getFalseOrd() { return falseOrd; }
         public long getStartTime() { return myStartWallTime; }
         public long getEndTime() { return wallTime; }
         public long getMyStartCPUTime() { return myStartCPUTime; }
@@ -214,6 +496,8 @@ public class Main {
         public long getWallTime() { return wallTime; }
         public long getCPUTime() { return wallTime; }
         public long getKeysum() { return keysum; }
+        public LatencyHistogram[] getLatencies() { return latencies; }
+        public LatencyHistogram[] getStepLatencies() { return stepLatencies; }
     }
     
     final class BoolHolder { volatile boolean b; }
@@ -282,23 +566,45 @@ public class Main {
         startWallTime = new AtomicLong(0);
         startUserTime = new AtomicLong(0);
         CyclicBarrier start = new CyclicBarrier(ex.nprocs);
+        CountDownLatch go = new CountDownLatch(1);
         ArrayList<RandomGenerator> arrays =  new ArrayList<RandomGenerator>(ex.nprocs); // generators supply keys for each thread
         ArrayList<Worker> workers = new ArrayList<Worker>(ex.nprocs);    // these are the threads that perform random operations
         for (int i=0;i<ex.nprocs;i++) {
             arrays.add(new RandomGenerator(i, ex.nprocs, new Random(rng.nextInt()), ex.maxkey));
-            workers.add(new TimedWorker((long) (nseconds*1e9), arrays.get(i), ex, rng, tree, start, startUserTime, startWallTime, workers));
+            workers.add(new TimedWorker((long) (nseconds*1e9), arrays.get(i), ex, rng, tree, start, go, startUserTime, startWallTime, workers));
+        }
+        OpTrace.Writer traceWriter = null;
+        try {
+            if (recordPath != null) traceWriter = new OpTrace.Writer(new File(recordPath).toPath(), recordSeed);
+        } catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+        for (int i=0;i<ex.nprocs;i++) {
+            final TimedWorker w = (TimedWorker) workers.get(i);
+            if (traceWriter != null) w.recorder = traceWriter.recorder(i);
+            if (replayTrace != null) w.replay = replayTrace.cursor(i);
         }
         
         // perform garbage collection to clean up after the last trial, and record how much GC has happened so far
         System.gc();
         final long gcTimeStart = totalGarbageCollectionTimeMillis();
         
-        // run the trial
-        for (int i=0;i<ex.nprocs;i++) workers.get(i).start();
+        // run the trial, on virtual threads for -virtual (a Thread is also a Runnable)
+        ArrayList<Thread> threads = new ArrayList<Thread>(ex.nprocs);
+        for (Worker w : workers) threads.add(switches.get("virtual") != 0 ? VIRTUAL_THREADS.newThread(w) : w);
+        for (int i=0;i<ex.nprocs;i++) threads.get(i).start();
         ex.state = ExperimentState.RUNNING;
+        go.countDown();
         long localStartTime = System.nanoTime();
         try {
-            Thread.sleep((long)(nseconds * 1e3));
+            if (replayTrace != null) {
+                // a replay is over when every thread has run out of trace, or at the time limit
+                final long deadline = localStartTime + (long) (nseconds * 1e9);
+                for (Thread t : threads) {
+                    final long millis = (deadline - System.nanoTime()) / 1000000;
+                    if (millis > 0) t.join(millis);
+                }
+            } else {
+                Thread.sleep((long)(nseconds * 1e3));
+            }
         } catch (InterruptedException ex1) {
             ex1.printStackTrace();
             System.exit(-1);
@@ -307,9 +613,13 @@ public class Main {
         ex.state = ExperimentState.STOPPED;
 
         // stop all threads and record how much GC has happened so far
-        try { for (int i=0;i<ex.nprocs;i++) workers.get(i).join(); }
+        try { for (int i=0;i<ex.nprocs;i++) threads.get(i).join(); }
         catch (InterruptedException e) { e.printStackTrace(); System.exit(-1); }
         final long gcTimeEnd = totalGarbageCollectionTimeMillis();
+        if (traceWriter != null) {
+            for (Worker w : workers) ((TimedWorker) w).recorder.close();
+            try { traceWriter.close(); } catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+        }
         
         // compute key checksum for all threads (including from prefilling) and compare it with the key checksum for the data structure
         long threadsKeysum = pair.keysum;
@@ -330,7 +640,7 @@ public class Main {
             
             double elapsed = (localEndTime - localStartTime)/1e9;
             out.print(prefix + ",");
-            long ntrueins = 0, nfalseins = 0, ntruedel = 0, nfalsedel = 0, ntruefind = 0, nfalsefind = 0;
+            long ntrueins = 0, nfalseins = 0, ntruedel = 0, nfalsedel = 0, ntruefind = 0, nfalsefind = 0, ntrueord = 0, nfalseord = 0;
             for (Worker w : workers) {
                 ntrueins += w.getTrueIns();
                 nfalseins += w.getFalseIns();
@@ -338,10 +648,12 @@ public class Main {
                 nfalsedel += w.getFalseDel();
                 ntruefind += w.getTrueFind();
                 nfalsefind += w.getFalseFind();
+                ntrueord += w.getTrueOrd();
+                nfalseord += w.getFalseOrd();
             }
             int nnodes = 0;
-            double averageDepth = 0;
-            long ntrue = ntrueins+ntruedel+ntruefind, nfalse = nfalseins+nfalsedel+nfalsefind;
+            double averageDepth = averageDepth(tree);
+            long ntrue = ntrueins+ntruedel+ntruefind+ntrueord, nfalse = nfalseins+nfalsedel+nfalsefind+nfalseord;
             long nops = ntrue+nfalse;
             ex.throughput = (int)(nops/(double)elapsed);
             out.print(ex.nprocs + "," + nops + "," + ex.maxkey + ",");
@@ -357,6 +669,41 @@ public class Main {
             out.print(gcElapsedTime + ",");
         
             out.print(ex.throughput);
+            out.print("," + averageDepth);
+            
+            // latency percentiles in nanoseconds, over the merged histograms of all workers
+            if (switches.get("latency") != 0) {
+                for (int kind = 0; kind < OP_NAMES.length; kind++) {
+                    LatencyHistogram merged = new LatencyHistogram();
+                    for (Worker w : workers) merged.add(w.getLatencies()[kind]);
+                    out.print("," + merged.valueAtPercentile(50) + "," + merged.valueAtPercentile(99)
+                            + "," + merged.valueAtPercentile(99.9) + "," + merged.getMax());
+                }
+            }
+            
+            // open loop: the schedule, and on stdout how each step of it went
+            final double[] schedule = rateSchedule();
+            final StringBuilder steps = new StringBuilder();
+            if (schedule != null) {
+                out.print(",");
+                for (int step = 0; step < schedule.length; step++) out.print((step > 0 ? ";" : "") + (long) schedule[step]);
+                final double stepSeconds = nseconds / schedule.length;
+                for (int step = 0; step < schedule.length; step++) {
+                    LatencyHistogram merged = new LatencyHistogram();
+                    for (Worker w : workers) merged.add(w.getStepLatencies()[step]);
+                    steps.append("  step " + step + ": target " + (long) schedule[step] + " ops/s, achieved " + (long) (merged.getCount() / stepSeconds)
+                            + " ops/s, latency ns p50 " + merged.valueAtPercentile(50) + " p99 " + merged.valueAtPercentile(99)
+                            + " p99.9 " + merged.valueAtPercentile(99.9) + " max " + merged.getMax() + "\n");
+                }
+            }
+    
+            // -Dlazybst.metrics=true: what every BST (including the shards of ShardedBST) did during the trial
+            if (BST.METRICS) {
+                final BSTMetrics m = BST.getMetrics();
+                out.print("," + m.getFinds() + "," + m.getAverageFindDepth() + "," + m.getMaxFindDepth()
+                        + "," + m.getFindRestarts() + "," + m.getValidateFailures() + "," + m.getLockBusy()
+                        + "," + m.getLockHolds() + "," + m.getAverageLockHoldNanos() + "," + m.getMaxLockHoldNanos());
+            }
     
             if (PRINT_FREEMEM) {
                 System.gc();
@@ -365,6 +712,13 @@ public class Main {
             }
             
             out.println(); // finished line of output
+            System.out.print(steps);
+            if (replayTrace != null) {
+                long mismatches = 0;
+                for (Worker w : workers) mismatches += ((TimedWorker) w).mismatches;
+                System.out.println("  replayed " + nops + " of " + replayTrace.records() + " operations, "
+                        + mismatches + " with a different result than in the trace");
+            }
         }
         return true;
     }
@@ -379,14 +733,18 @@ public class Main {
     }   
     
     protected static final class Ratio {
-        final double del, ins;
+        final double del, ins, ord; // ord: floor/ceiling/lower/higher queries
         public Ratio(final double ins, final double del) {
-            if (ins < 0 || del < 0 || ins+del > 1) throw new RuntimeException("invalid ratio " + ins + "i-" + del + "d");
+            this(ins, del, 0);
+        }
+        public Ratio(final double ins, final double del, final double ord) {
+            if (ins < 0 || del < 0 || ord < 0 || ins+del+ord > 1) throw new RuntimeException("invalid ratio " + ins + "i-" + del + "d-" + ord + "o");
             this.del = del;
             this.ins = ins;
+            this.ord = ord;
         }
         @Override
-        public String toString() { return "" + (int)(100*ins) + "i-" + (int)(100*del) + "d"; }
+        public String toString() { return "" + (int)(100*ins) + "i-" + (int)(100*del) + "d" + (ord > 0 ? "-" + (int)(100*ord) + "o" : ""); }
     }
     
     protected enum ExperimentState { PENDING, RUNNING, STOPPED }
@@ -407,7 +765,8 @@ public class Main {
         }
         @Override
         public String toString() {
-            return alg + "-" + nprocs + "thr-" + maxkey + "keys-" + ratio;
+            final String dist = distributionName();
+            return alg + "-" + nprocs + "thr-" + maxkey + "keys-" + ratio + (dist.equals("uniform") ? "" : "-" + dist);
         }
     }
 
@@ -539,9 +898,129 @@ public class Main {
         return new SizeKeysumPair(treeSize, keysum);
     }
     
+    // prefills directly to the steady state of fillToSteadyState: each key is present
+    // with probability ins/(ins+del), independently of the others
+    SizeKeysumPair bulkFill(
+            final java.util.Random rand,
+            final BSTInterface tree,
+            Ratio ratio,
+            int maxkey) {
+        
+        long startFilling = System.nanoTime();
+        final double p = Math.abs(ratio.ins + ratio.del) < 1e-8 ? 0.5 : ratio.ins / (ratio.ins+ratio.del);
+        int[] keys = new int[maxkey];
+        int n = 0;
+        long keysum = 0;
+        for (int key=1;key<=maxkey;key++) {
+            if (rand.nextDouble() < p) {
+                keys[n++] = key;
+                keysum += key;
+            }
+        }
+        keys = java.util.Arrays.copyOf(keys, n);
+        
+        if (tree instanceof BST) {
+            ((BST) tree).bulkLoadParallel(keys);
+        } else if (tree instanceof ShardedBST) {
+            ((ShardedBST) tree).bulkLoad(keys);
+        } else {
+            // no bulk load: insert in random order, so an unbalanced tree does not degenerate
+            for (int i=n-1;i>0;i--) {
+                int j = rand.nextInt(i+1);
+                int t = keys[i]; keys[i] = keys[j]; keys[j] = t;
+            }
+            for (int key : keys) tree.insert(key);
+        }
+        
+        long endFilling = System.nanoTime();
+        System.out.print("initnodes-" + n + "-");
+        System.out.print("in" + toPercent((endFilling-startFilling) / 1e9 / 100) + "s[bulk]-");
+        return new SizeKeysumPair(n, keysum);
+    }
+    
+    protected BST.Option[] getOptions() {
+        ArrayList<BST.Option> options = new ArrayList<BST.Option>();
+        for (BST.Option o : BST.Option.values()) {
+            if (switches.get("opt-" + o.name()) != 0) options.add(o);
+        }
+        return options.toArray(new BST.Option[0]);
+    }
+
+    /*
+     * The trees -alg can choose from. BST, ShardedBST and BSTMap take the -opt-*
+     * options; ShardedBST splits the keys over -shardsN trees (DEFAULT_SHARDS if N is
+     * not given). SkipList (ConcurrentSkipListSet) and LockedTreeSet (a TreeSet behind
+     * a read-write lock) are the JDK baselines.
+     */
+    static final String[] ALGORITHMS = {"BST", "ShardedBST", "ArrayBST", "BSTMap", "SkipList", "LockedTreeSet"};
+    static final int DEFAULT_SHARDS = 4;
+
+    // the ALGORITHMS entry for name, ignoring case, or null
+    static String algorithmNamed(final String name) {
+        for (String a : ALGORITHMS) {
+            if (a.equalsIgnoreCase(name)) return a;
+        }
+        return null;
+    }
+
+    // the algorithms to compare, in the order -alg gave them
+    protected ArrayList<String> getAlgorithms() {
+        final ArrayList<String> result = new ArrayList<String>();
+        for (int i = 0; i < (int) switches.get("alg-count"); i++) {
+            result.add(ALGORITHMS[(int) switches.get("alg-" + i)]);
+        }
+        if (result.isEmpty()) {
+            // -array and -shardsN predate -alg
+            final int nshards = (int) switches.get("shards");
+            result.add(switches.get("array") != 0 ? "ArrayBST" : nshards > 1 ? "ShardedBST" : alg);
+        }
+        return result;
+    }
+
+    protected int shardCount() {
+        final int nshards = (int) switches.get("shards");
+        return nshards > 0 ? nshards : DEFAULT_SHARDS;
+    }
+
+    protected BSTInterface createTree(final Experiment ex) {
+        if (ex.alg.startsWith("ShardedBST")) return new ShardedBST(shardCount(), ex.maxkey, getOptions());
+        switch (ex.alg) {
+            case "ArrayBST": return new ArrayBST();
+            case "BSTMap": return new BSTMap(getOptions());
+            case "SkipList": return new SkipListSet();
+            case "LockedTreeSet": return new LockedTreeSet();
+            default: return new BST(getOptions());
+        }
+    }
+
+    // 0 for trees that do not report their shape
+    protected double averageDepth(final BSTInterface tree) {
+        if (tree instanceof BST) return ((BST) tree).averageDepth();
+        if (tree instanceof ShardedBST) return ((ShardedBST) tree).averageDepth();
+        if (tree instanceof ArrayBST) return ((ArrayBST) tree).averageDepth();
+        return 0;
+    }
+
+    // retries per retry site, for the trees that count them
+    protected String retriesSummary(final BSTInterface tree) {
+        if (tree instanceof BST) return " retries: " + ((BST) tree).getContentionManager().retriesSummary();
+        if (tree instanceof ShardedBST) {
+            StringBuilder sb = new StringBuilder(" retries:");
+            for (ContentionManager.Site site : ContentionManager.Site.values()) {
+                sb.append(' ').append(site.name().toLowerCase()).append('=').append(((ShardedBST) tree).retries(site));
+            }
+            return sb.toString();
+        }
+        return "";
+    }
+
     protected ArrayList<Experiment> getExperiments() {
         final ArrayList<Experiment> exp = new ArrayList<Experiment>();
-        exp.add(new Experiment(alg, nthreads, (int) switches.get("keyRange"), ratio));
+        for (String a : getAlgorithms()) {
+            final String name = a.equals("ShardedBST") ? a + shardCount() : a;
+            // a replay runs one thread per thread of the trace
+            exp.add(new Experiment(name, replayTrace != null ? replayTrace.threads() : nthreads, (int) switches.get("keyRange"), ratio));
+        }
         return exp;
     }
     
@@ -570,9 +1049,25 @@ public class Main {
                 + ",time"
                 + ",gcTime"
                 + ",throughput"
+                + ",avgDepth"
                 );
+        if (switches.get("latency") != 0) {
+            for (String op : OP_NAMES) {
+                out.print("," + op + "P50," + op + "P99," + op + "P99.9," + op + "Max");
+            }
+        }
+        if (rateSchedule() != null) out.print(",targetRate");
+        if (BST.METRICS) {
+            out.print(",finds,avgFindDepth,maxFindDepth,findRestarts,validateFailures,lockBusy,lockHolds,avgLockHoldNs,maxLockHoldNs");
+        }
         out.println();
         
+        if (replayFile != null) {
+            try { replayTrace = new OpTrace.Reader(new File(replayFile).toPath()); }
+            catch (IOException e) { e.printStackTrace(); System.exit(-1); }
+            System.out.println("replaying " + replayTrace.records() + " operations of " + replayTrace.threads() + " threads from " + replayFile);
+        }
+
         // retrieve list of experiments to perform (this is a method because subclasses can implement it differently)
         ArrayList<Experiment> exp = getExperiments();
 
@@ -583,6 +1078,19 @@ public class Main {
         System.out.println(exp.size() + " experiments in total");
         int numberOfRuns = exp.size() * ntrials;
 
+        // make sure every tree answers the ordered queries its trials will ask before
+        // running any trial, rather than failing after the trials of the trees before it
+        final boolean traceOrdered = replayTrace != null
+                && replayTrace.count(OpTrace.FLOOR) + replayTrace.count(OpTrace.CEILING) + replayTrace.count(OpTrace.LOWER) + replayTrace.count(OpTrace.HIGHER) > 0;
+        for (Experiment ex : exp) {
+            if (replayTrace != null ? !traceOrdered : ex.ratio.ord == 0) continue;
+            try { createTree(ex).floor(0, 0); }
+            catch (UnsupportedOperationException e) {
+                System.out.println(ex.alg + " does not support ordered queries (" + (replayTrace != null ? "the trace has some" : "-ord") + ")");
+                System.exit(-1);
+            }
+        }
+
         // start measuring time for the purpose of progress updates
         final long startTime = System.nanoTime();
         int nCompleted = 0;
@@ -600,10 +1108,26 @@ public class Main {
             java.util.Random experimentRng = new java.util.Random(experimentSeed);
 
             for (int trial=0;trial<ntrials;++trial) {
-                BSTInterface tree = new BST();
+                BSTInterface tree = createTree(ex);
+                // a recorded trial is set up from a seed of its own, kept in the trace, so that
+                // every replay of it starts from the same tree
+                java.util.Random trialRng = experimentRng;
+                if (recordFile != null) {
+                    recordSeed = experimentRng.nextInt();
+                    trialRng = new java.util.Random(recordSeed);
+                } else if (replayTrace != null) {
+                    trialRng = new java.util.Random(replayTrace.seed());
+                }
                 SizeKeysumPair p = new SizeKeysumPair(0, 0);
-                if (prefill) p = fillToSteadyState(experimentRng, tree, ex.ratio, ex.maxkey, false);
-                if (!runTrial(out, false, trial+1 == ntrials, tree.getName() + "," + trial, p, experimentRng, tree, ex)) System.exit(-1);
+                if (prefill && switches.get("bulkprefill") != 0) p = bulkFill(trialRng, tree, ex.ratio, ex.maxkey);
+                else if (prefill) p = fillToSteadyState(trialRng, tree, ex.ratio, ex.maxkey, false);
+                // count the retries of the trial only
+                if (tree instanceof BST) ((BST) tree).getContentionManager().resetRetries();
+                else if (tree instanceof ShardedBST) ((ShardedBST) tree).resetRetries();
+                if (BST.METRICS) BST.getMetrics().reset();
+                // one trace per trial, named after it if there is more than one
+                if (recordFile != null) recordPath = numberOfRuns == 1 ? recordFile : recordFile + "-" + ex.alg + "-" + trial;
+                if (!runTrial(out, false, trial+1 == ntrials, ex.alg + "," + trial, p, trialRng, tree, ex)) System.exit(-1);
                 progress(stdout, tree, ++nCompleted, trial, tree.getName(), startTime, numberOfRuns, ex);
             }
         }
@@ -621,7 +1145,7 @@ public class Main {
         
         double prog = ((int)(1000*(double) z / nRuns)) / 10.0;
         int elapsed = (int)((System.nanoTime()-startTime)/1e9+0.5);
-        stdout.println(ex + " " + name + " trial " + i + " : " + prog + "% done, " + "elapsed " + elapsed + "s");
+        stdout.println(ex + " " + name + " trial " + i + " : " + prog + "% done, " + "elapsed " + elapsed + "s" + retriesSummary(tree));
     }
     
     double toPercent(double x) { // keep only 1 decimal point
@@ -635,17 +1159,43 @@ public class Main {
             System.out.println("Can also include switches after mandatory arguments:");
             System.out.println("\t-s###     to set the random seed (32-bit signed int; default is " + Globals.DEFAULT_SEED + ")");
             System.out.println("\t-prefill  to prefill structures to steady state with random operations");
+            System.out.println("\t-prefill-bulk to prefill structures to steady state by bulk loading a random key set");
             System.out.println("\t-file-### to specify an output file to store results in");
             System.out.println("The following switches determine which operations are run (leftover % becomes search):");
             System.out.println("\t-ins%     to specify what % (0 to 100) of ops should be inserts");
             System.out.println("\t-del%     to specify what % (0 to 100) of ops should be deletes");
+            System.out.println("\t-ord%     to specify what % (0 to 100) of ops should be floor/ceiling/lower/higher queries");
             System.out.println("\t-keysM    random keys will be uniformly from range [0,M) (default 1000000)");
+            System.out.println("\t-dist-uniform       keys are drawn uniformly (the default)");
+            System.out.println("\t-dist-zipfT         keys follow a Zipfian distribution with 0 < theta T < 1 (e.g. -dist-zipf0.99)");
+            System.out.println("\t-dist-hotspotX-Y    X% of ops go to the lowest Y% of the keys");
+            System.out.println("\t-dist-shiftingX-Y   like hotspot, but the hot set moves on every " + SHIFT_OPS + " ops of a thread");
+            System.out.println("\t-dist-sequential    each thread walks its share of the keys in increasing order");
+            System.out.println("\t-algA[,A...] compare the given algorithms, one experiment each (default BST), from:");
+            for (String a : ALGORITHMS) {
+                System.out.println("\t           " + a);
+            }
+            System.out.println("\t-shardsN  split the key range evenly over N independent BSTs");
+            System.out.println("\t-array    use ArrayBST, which keeps its nodes in int slabs");
+            System.out.println("\t-rateR[,R...] open loop: issue R ops/s over all threads, stepping through the rates in equal parts of the trial (implies -latency)");
+            System.out.println("\t-virtual  run one virtual thread per client (#THREADS may be tens of thousands; needs Java 21+, implies -latency;");
+            System.out.println("\t           without -think only as many clients as there are carriers get to run)");
+            System.out.println("\t-thinkU   clients pause for an exponentially distributed U microseconds on average between operations");
+            System.out.println("\t-record-### to write every operation of a trial (thread, op, key, result) to a binary trace file");
+            System.out.println("\t-replay-### to replay a trace instead of random operations, one thread per thread of the trace,");
+            System.out.println("\t           until it is over or the trial's time is up (use the -keys and -prefill of the recording)");
+            System.out.println("\t-latency  to record the latency of every operation and add p50/p99/p99.9/max columns (ns) per kind of operation");
+            System.out.println("The following switches enable optional BST behaviours:");
+            for (BST.Option o : BST.Option.values()) {
+                System.out.println("\t-opt-" + o.name().toLowerCase().replace('_', '-'));
+            }
             System.exit(-1);
         }
         int nthreads = 0;
         int ntrials = 0;
         double nseconds = 0;
         String filename = null;
+        String recordFile = null, replayFile = null;
         boolean prefill = false;
 
         SwitchMap switches = new SwitchMap();
@@ -708,6 +1258,18 @@ public class Main {
                         System.out.println("The delete percentage must be a 32-bit integer.");
                         System.exit(-1);
                     }
+                } else if (args[i].matches("-ord[0-9]+(\\.[0-9]+){0,1}")) {
+                    try {
+                        switches.put("ratio-ord", Double.parseDouble(args[i].substring(4, args[i].length())));
+                        totalOpPercent += switches.get("ratio-ord");
+                        if (switches.get("ratio-ord") < 0) {
+                            System.out.println("The ordered query percentage must be >= 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The ordered query percentage must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
                 } else if (args[i].matches("-keys[0-9]+")) {
                     try {
                         switches.put("keyRange", (double) Integer.parseInt(args[i].substring(5, args[i].length())));
@@ -719,10 +1281,94 @@ public class Main {
                         System.out.println("The key range must be a 32-bit integer.");
                         System.exit(-1);
                     }
+                } else if (args[i].matches("-shards[0-9]+")) {
+                    try {
+                        switches.put("shards", (double) Integer.parseInt(args[i].substring("-shards".length())));
+                        if (switches.get("shards") < 1) {
+                            System.out.println("The number of shards must be > 0");
+                            System.exit(-1);
+                        }
+                    } catch (Exception ex) {
+                        System.out.println("The number of shards must be a 32-bit integer.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].startsWith("-alg")) {
+                    final String[] names = args[i].substring("-alg".length()).split(",");
+                    for (String name : names) {
+                        final String a = algorithmNamed(name);
+                        if (a == null) {
+                            System.out.println("Unknown algorithm \"" + name + "\"; choose from " + String.join(", ", ALGORITHMS));
+                            System.exit(-1);
+                        }
+                        switches.put("alg-" + (int) switches.get("alg-count"), (double) java.util.Arrays.asList(ALGORITHMS).indexOf(a));
+                        switches.put("alg-count", switches.get("alg-count") + 1);
+                    }
+                } else if (args[i].matches("-array")) {
+                    switches.put("array", 1.);
+                } else if (args[i].matches("-dist-(uniform|sequential)")) {
+                    switches.put("dist", (double) (args[i].endsWith("uniform") ? Distribution.UNIFORM : Distribution.SEQUENTIAL).ordinal());
+                } else if (args[i].matches("-dist-zipf[0-9]*(\\.[0-9]+){0,1}")) {
+                    try {
+                        final double theta = Double.parseDouble(args[i].substring("-dist-zipf".length()));
+                        if (!(theta > 0 && theta < 1)) throw new NumberFormatException();
+                        switches.put("dist", (double) Distribution.ZIPF.ordinal());
+                        switches.put("dist-theta", theta);
+                    } catch (NumberFormatException ex) {
+                        System.out.println("The Zipfian theta must be a number strictly between 0 and 1.");
+                        System.exit(-1);
+                    }
+                } else if (args[i].matches("-dist-(hotspot|shifting)[0-9]+(\\.[0-9]+){0,1}-[0-9]+(\\.[0-9]+){0,1}")) {
+                    final boolean shifting = args[i].startsWith("-dist-shifting");
+                    final String[] parts = args[i].substring((shifting ? "-dist-shifting" : "-dist-hotspot").length()).split("-");
+                    final double hotOps = Double.parseDouble(parts[0]), hotKeys = Double.parseDouble(parts[1]);
+                    if (hotOps > 100 || hotKeys <= 0 || hotKeys > 100) {
+                        System.out.println("Hot set percentages must satisfy 0 <= ops <= 100 and 0 < keys <= 100.");
+                        System.exit(-1);
+                    }
+                    switches.put("dist", (double) (shifting ? Distribution.SHIFTING : Distribution.HOTSPOT).ordinal());
+                    switches.put("dist-hot-ops", hotOps);
+                    switches.put("dist-hot-keys", hotKeys);
+                } else if (args[i].matches("-rate[0-9]+(\\.[0-9]+){0,1}(,[0-9]+(\\.[0-9]+){0,1})*")) {
+                    final String[] rates = args[i].substring("-rate".length()).split(",");
+                    for (int r = 0; r < rates.length; r++) {
+                        switches.put("rate-" + r, Double.parseDouble(rates[r]));
+                        if (switches.get("rate-" + r) <= 0) {
+                            System.out.println("Target rates must be > 0 ops/s");
+                            System.exit(-1);
+                        }
+                    }
+                    switches.put("rate-steps", (double) rates.length);
+                    switches.put("latency", 1.); // latency is what an open loop is for
+                } else if (args[i].matches("-virtual")) {
+                    if (VIRTUAL_THREADS == null) {
+                        System.out.println("-virtual needs a JDK with virtual threads (21 or later), this is " + System.getProperty("java.version"));
+                        System.exit(-1);
+                    }
+                    switches.put("virtual", 1.);
+                    switches.put("latency", 1.);
+                } else if (args[i].matches("-think[0-9]+(\\.[0-9]+){0,1}")) {
+                    switches.put("think", Double.parseDouble(args[i].substring("-think".length())));
+                } else if (args[i].matches("-latency")) {
+                    switches.put("latency", 1.);
+                } else if (args[i].startsWith("-record-")) {
+                    recordFile = args[i].substring("-record-".length());
+                } else if (args[i].startsWith("-replay-")) {
+                    replayFile = args[i].substring("-replay-".length());
                 } else if (args[i].startsWith("-file-")) {
                     filename = args[i].substring("-file-".length());
                 } else if (args[i].matches("-prefill")) {
                     prefill = true;
+                } else if (args[i].matches("-prefill-bulk")) {
+                    prefill = true;
+                    switches.put("bulkprefill", 1.);
+                } else if (args[i].startsWith("-opt-")) {
+                    try {
+                        BST.Option o = BST.Option.valueOf(args[i].substring("-opt-".length()).toUpperCase().replace('-', '_'));
+                        switches.put("opt-" + o.name(), 1.);
+                    } catch (IllegalArgumentException ex) {
+                        System.out.println("Unknown BST option: \"" + args[i] + "\"");
+                        System.exit(-1);
+                    }
                 } else {
                     System.out.println("Unrecognized command-line switch: \"" + args[i] + "\"");
                     System.exit(-1);
@@ -735,9 +1381,17 @@ public class Main {
             System.exit(-1);
         }
 
-        (new Main(nthreads, ntrials, nseconds, filename,
-                new Ratio(switches.get("ratio-ins") / 100., switches.get("ratio-del") / 100.),
-                switches, prefill)).run(output);
+        if (recordFile != null && replayFile != null) {
+            System.out.println("-record and -replay cannot be combined");
+            System.exit(-1);
+        }
+
+        final Main main = new Main(nthreads, ntrials, nseconds, filename,
+                new Ratio(switches.get("ratio-ins") / 100., switches.get("ratio-del") / 100., switches.get("ratio-ord") / 100.),
+                switches, prefill);
+        main.recordFile = recordFile;
+        main.replayFile = replayFile;
+        main.run(output);
     }
 
     public static void main(String[] args) throws Exception {
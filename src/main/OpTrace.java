@@ -0,0 +1,238 @@
+package main;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+/**
+ * A binary trace of the operations the threads of a trial performed, each with its
+ * key and result, written and read through memory-mapped FileChannels.
+ *
+ * The file is a 16 byte header (magic, version, records per block, seed) followed by
+ * blocks of one thread each: the thread's id and the number of records in the
+ * block, then up to BLOCK_RECORDS records of 9 bytes: the op, the key and the
+ * result (1 or 0 for insert, remove and contains, the key returned for an ordered
+ * query). Everything is little-endian. A thread claims a new block when its current
+ * one is full, so recording never contends except for that claim, and the records
+ * of one thread are in the order it performed them. How the operations of different
+ * threads interleaved is not recorded; a replay runs each thread's sequence on a
+ * thread of its own, as fast as the tree allows.
+ *
+ * The seed is that of the random numbers the trial was set up with, its prefill in
+ * particular, so that a replay can start from the tree the recording started from.
+ */
+public final class OpTrace {
+    public static final byte INSERT = 0, REMOVE = 1, CONTAINS = 2, FLOOR = 3, CEILING = 4, LOWER = 5, HIGHER = 6;
+
+    static final int MAGIC = 0x5453424c; // "LBST"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 16;
+    static final int BLOCK_HEADER_BYTES = 8;
+    static final int RECORD_BYTES = 9;
+    static final int BLOCK_RECORDS = 1024; // small enough for tens of thousands of -virtual clients
+    static final int BLOCK_BYTES = BLOCK_HEADER_BYTES + BLOCK_RECORDS * RECORD_BYTES;
+    static final int REGION_BLOCKS = 4096; // blocks are mapped this many at a time, about 36 MiB
+
+    private OpTrace() {
+    }
+
+    /**
+     * Writes a trace. Each thread records through a Recorder of its own; close the
+     * writer once every recorder is closed.
+     */
+    public static final class Writer implements AutoCloseable {
+        private final FileChannel channel;
+        private final ArrayList<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+        private int blocks;
+
+        public Writer(final Path file, final int seed) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(BLOCK_RECORDS).putInt(seed).flip();
+            channel.write(header, 0);
+        }
+
+        public Recorder recorder(final int thread) {
+            return new Recorder(this, thread);
+        }
+
+        // the next free block, mapping a new region of the file if it is the first of one
+        synchronized ByteBuffer claim(final int thread) {
+            final int region = blocks / REGION_BLOCKS;
+            if (region == regions.size()) {
+                try {
+                    regions.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                            HEADER_BYTES + (long) region * REGION_BLOCKS * BLOCK_BYTES, (long) REGION_BLOCKS * BLOCK_BYTES));
+                } catch (IOException e) {
+                    throw new java.io.UncheckedIOException(e);
+                }
+            }
+            final ByteBuffer block = regions.get(region).slice((blocks % REGION_BLOCKS) * BLOCK_BYTES, BLOCK_BYTES)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            blocks++;
+            block.putInt(0, thread);
+            block.putInt(4, 0);
+            return block;
+        }
+
+        // flushes the blocks and cuts the file after the last one claimed; mappings
+        // stay open until collected, but nothing touches them past that point
+        @Override
+        public synchronized void close() throws IOException {
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+            channel.truncate(HEADER_BYTES + (long) blocks * BLOCK_BYTES);
+            channel.close();
+        }
+    }
+
+    /**
+     * Records the operations of one thread. record neither allocates nor synchronizes,
+     * except to claim a block every BLOCK_RECORDS records.
+     */
+    public static final class Recorder {
+        private final Writer writer;
+        private final int thread;
+        private ByteBuffer block;
+        private int count;
+
+        Recorder(final Writer writer, final int thread) {
+            this.writer = writer;
+            this.thread = thread;
+        }
+
+        public void record(final byte op, final int key, final int result) {
+            if (block == null || count == BLOCK_RECORDS) {
+                close();
+                block = writer.claim(thread);
+                count = 0;
+            }
+            final int at = BLOCK_HEADER_BYTES + count * RECORD_BYTES;
+            block.put(at, op);
+            block.putInt(at + 1, key);
+            block.putInt(at + 5, result);
+            count++;
+        }
+
+        // publishes the count of the current block; recording may go on afterwards
+        public void close() {
+            if (block != null) {
+                block.putInt(4, count);
+            }
+        }
+    }
+
+    /**
+     * Reads a trace, mapping it whole (in regions) and finding the blocks of each
+     * thread; the records themselves are read through Cursors, one per thread. Opening
+     * a trace counts its operations by kind, which also pages it in ahead of a replay.
+     */
+    public static final class Reader implements AutoCloseable {
+        private final FileChannel channel;
+        private final ArrayList<ArrayList<ByteBuffer>> threadBlocks = new ArrayList<ArrayList<ByteBuffer>>();
+        private long records;
+        private final long[] ops = new long[HIGHER + 1];
+        private final int seed;
+
+        public Reader(final Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            final long size = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (size < HEADER_BYTES || channel.read(header, 0) != HEADER_BYTES
+                    || header.getInt(0) != MAGIC || header.getInt(4) != VERSION || header.getInt(8) != BLOCK_RECORDS) {
+                channel.close();
+                throw new IOException(file + " is not a version " + VERSION + " operation trace");
+            }
+            seed = header.getInt(12);
+            final long blocks = (size - HEADER_BYTES) / BLOCK_BYTES;
+            for (long first = 0; first < blocks; first += REGION_BLOCKS) {
+                final int n = (int) Math.min(REGION_BLOCKS, blocks - first);
+                final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                        HEADER_BYTES + first * BLOCK_BYTES, (long) n * BLOCK_BYTES);
+                for (int b = 0; b < n; b++) {
+                    final ByteBuffer block = region.slice(b * BLOCK_BYTES, BLOCK_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    final int thread = block.getInt(0), count = block.getInt(4);
+                    if (thread < 0 || count < 0 || count > BLOCK_RECORDS) {
+                        throw new IOException(file + " has a corrupt block at " + (first + b));
+                    }
+                    if (count == 0) continue;
+                    while (threadBlocks.size() <= thread) threadBlocks.add(new ArrayList<ByteBuffer>());
+                    threadBlocks.get(thread).add(block);
+                    records += count;
+                    for (int r = 0; r < count; r++) {
+                        final byte op = block.get(BLOCK_HEADER_BYTES + r * RECORD_BYTES);
+                        if (op < 0 || op > HIGHER) {
+                            throw new IOException(file + " has an unknown op " + op + " in block " + (first + b));
+                        }
+                        ops[op]++;
+                    }
+                }
+            }
+        }
+
+        // 1 + the highest thread id with any records
+        public int threads() {
+            return threadBlocks.size();
+        }
+
+        public long records() {
+            return records;
+        }
+
+        // how many records have the given op
+        public long count(final byte op) {
+            return ops[op];
+        }
+
+        public int seed() {
+            return seed;
+        }
+
+        public Cursor cursor(final int thread) {
+            return new Cursor(thread < threadBlocks.size() ? threadBlocks.get(thread) : new ArrayList<ByteBuffer>());
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * The records of one thread, in order. next() moves to the next record and does not
+     * allocate; op, key and result are then those of the record.
+     */
+    public static final class Cursor {
+        private final ArrayList<ByteBuffer> blocks;
+        private int blockIndex = -1;
+        private ByteBuffer block;
+        private int count, index;
+        public byte op;
+        public int key, result;
+
+        Cursor(final ArrayList<ByteBuffer> blocks) {
+            this.blocks = blocks;
+        }
+
+        public boolean next() {
+            while (index == count) {
+                if (++blockIndex == blocks.size()) return false;
+                block = blocks.get(blockIndex);
+                count = block.getInt(4);
+                index = 0;
+            }
+            final int at = BLOCK_HEADER_BYTES + index++ * RECORD_BYTES;
+            op = block.get(at);
+            key = block.getInt(at + 1);
+            result = block.getInt(at + 5);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package main;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class OpTraceTest {
+
+    public static void main(String[] args) {
+        System.out.println("Starting OpTrace Tests...");
+
+        testRoundTrip();
+        testConcurrentRecorders();
+        testRejectsOtherFiles();
+
+        System.out.println("All tests completed successfully!");
+    }
+
+    private static void testRoundTrip() {
+        System.out.println("Testing round trip...");
+
+        try {
+            Path file = Files.createTempFile("optrace", ".trace");
+            // thread 0 spans several blocks, thread 2 one, and thread 1 records nothing
+            final int n = 3 * OpTrace.BLOCK_RECORDS + 5;
+            try (OpTrace.Writer writer = new OpTrace.Writer(file, 12345)) {
+                OpTrace.Recorder r0 = writer.recorder(0), r2 = writer.recorder(2);
+                for (int i = 0; i < n; i++) {
+                    r0.record((byte) (i % (OpTrace.HIGHER + 1)), i, -i);
+                    if (i < 10) r2.record(OpTrace.INSERT, 1000 + i, 1);
+                }
+                r0.close();
+                r2.close();
+            }
+            assert Files.size(file) == OpTrace.HEADER_BYTES + 5L * OpTrace.BLOCK_BYTES : "The file should end after the last block";
+
+            try (OpTrace.Reader reader = new OpTrace.Reader(file)) {
+                assert reader.seed() == 12345 : "Seed should be kept";
+                assert reader.threads() == 3 : "Threads should be 1 + the highest id: " + reader.threads();
+                assert reader.records() == n + 10 : "Every record should be read";
+                assert reader.count(OpTrace.INSERT) == (n + 6) / 7 + 10 : "Ops should be counted by kind";
+
+                OpTrace.Cursor c = reader.cursor(0);
+                for (int i = 0; i < n; i++) {
+                    assert c.next() : "Record " + i + " should be there";
+                    assert c.op == i % (OpTrace.HIGHER + 1) && c.key == i && c.result == -i : "Record " + i + " should read back as written";
+                }
+                assert !c.next() : "The cursor should end after the last record";
+                assert !reader.cursor(1).next() : "A thread that recorded nothing should have no records";
+                OpTrace.Cursor c2 = reader.cursor(2);
+                for (int i = 0; i < 10; i++) {
+                    assert c2.next() && c2.key == 1000 + i : "Threads should not see each other's records";
+                }
+                assert !c2.next() && !reader.cursor(7).next() : "Unknown threads should have no records";
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("Round trip tests passed");
+    }
+
+    private static void testConcurrentRecorders() {
+        System.out.println("Testing concurrent recorders...");
+
+        try {
+            Path file = Files.createTempFile("optrace", ".trace");
+            final int threads = 4, n = 20000;
+            try (final OpTrace.Writer writer = new OpTrace.Writer(file, 0)) {
+                Thread[] ts = new Thread[threads];
+                for (int t = 0; t < threads; t++) {
+                    final OpTrace.Recorder r = writer.recorder(t);
+                    final int id = t;
+                    ts[t] = new Thread(() -> {
+                        for (int i = 0; i < n; i++) r.record(OpTrace.CONTAINS, id * n + i, i & 1);
+                        r.close();
+                    });
+                    ts[t].start();
+                }
+                for (Thread t : ts) {
+                    try { t.join(); } catch (InterruptedException e) { throw new RuntimeException(e); }
+                }
+            }
+
+            try (OpTrace.Reader reader = new OpTrace.Reader(file)) {
+                assert reader.records() == (long) threads * n : "Every record should be read: " + reader.records();
+                for (int t = 0; t < threads; t++) {
+                    OpTrace.Cursor c = reader.cursor(t);
+                    for (int i = 0; i < n; i++) {
+                        assert c.next() && c.key == t * n + i && c.result == (i & 1) : "Thread " + t + " should read back in order at " + i;
+                    }
+                    assert !c.next() : "Thread " + t + " should have no more records";
+                }
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("Concurrent recorder tests passed");
+    }
+
+    private static void testRejectsOtherFiles() {
+        System.out.println("Testing other files...");
+
+        try {
+            Path file = Files.createTempFile("optrace", ".trace");
+            Files.write(file, "name,trial,nthreads\n".getBytes());
+            try {
+                new OpTrace.Reader(file).close();
+                assert false : "A file that is not a trace should be rejected";
+            } catch (IOException expected) {
+            }
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        System.out.println("Other file tests passed");
+    }
+}